@@ -0,0 +1,113 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * addBufferedLocation and getLastLocations: the ring buffer against the previous ArrayDeque implementation, and the
+ * packed array resolved by getLastLocations against a map per location and a JSON string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BufferBenchmark {
+    private static final Gson GSON = new Gson();
+
+    @Param({"10", "1000", "10000"})
+    public int bufferSize;
+
+    private MyLocation[] mLocations;
+    private LocationRingBuffer mRingBuffer;
+    private Deque<MyLocation> mDeque;
+    private int mNext = 0;
+
+    @Setup
+    public void setUp() {
+        mLocations = Fixtures.walk(bufferSize);
+        mRingBuffer = Fixtures.ringBuffer(bufferSize);
+        mDeque = new ArrayDeque<>(bufferSize);
+        for (MyLocation location : mLocations) {
+            mDeque.add(location);
+        }
+    }
+
+    private MyLocation nextLocation() {
+        MyLocation location = mLocations[mNext];
+        mNext = (mNext + 1) % mLocations.length;
+        return location;
+    }
+
+    @Benchmark
+    public int addRingBuffer() {
+        MyLocation location = nextLocation();
+        mRingBuffer.add(location.getLatitude(), location.getLongitude(), location.getAccuracy(), location.getTime(),
+                false, "fused");
+        return mRingBuffer.size();
+    }
+
+    /* previous addBufferedLocation: one MyLocation per fix and a trim loop */
+    @Benchmark
+    public int addDeque() {
+        MyLocation location = nextLocation();
+        MyLocation copy = new MyLocation("fused", location.getLatitude(), location.getLongitude(),
+                location.getAccuracy(), location.getTime(), false);
+        while (mDeque.size() >= bufferSize) {
+            mDeque.remove();
+        }
+        mDeque.add(copy);
+        return mDeque.size();
+    }
+
+    @Benchmark
+    public WritableArray getLastLocationsPacked() {
+        return LocationArrays.toPackedArray(mRingBuffer, bufferSize);
+    }
+
+    /* one map per location, like the LOCATION_UPDATED events */
+    @Benchmark
+    public WritableArray getLastLocationsMaps() {
+        WritableArray locations = Arguments.createArray();
+        for (int age = 0; age < mRingBuffer.size(); age++) {
+            locations.pushMap(MyLocation.toMap(mRingBuffer.getLatitude(age), mRingBuffer.getLongitude(age),
+                    mRingBuffer.getAccuracy(age), mRingBuffer.getTime(age), mRingBuffer.isFromMockProvider(age)));
+        }
+        return locations;
+    }
+
+    /* string path of the ring buffer, before the packed array */
+    @Benchmark
+    public String getLastLocationsJson() throws IOException {
+        return LocationJson.toJsonArray(mRingBuffer, bufferSize);
+    }
+
+    /* previous getLastLocations: descending iterator into a list serialized by reflection */
+    @Benchmark
+    public String getLastLocationsDeque() {
+        Iterator<MyLocation> iterator = mDeque.descendingIterator();
+        List<MyLocation> locationList = new ArrayList<>();
+        int i = 0;
+        while (iterator.hasNext() && i < bufferSize) {
+            locationList.add(iterator.next());
+            i++;
+        }
+        return GSON.toJson(locationList);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mobeye.geolocation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MyLocation.distanceTo and the Geodesy precisions, for a mission list of 1000 points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceBenchmark {
+    private static final int MISSION_COUNT = 1000;
+
+    private MyLocation mUser;
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+
+    @Setup
+    public void setUp() {
+        MyLocation[] missions = Fixtures.walk(MISSION_COUNT);
+        mUser = missions[0];
+        mLatitudes = new double[MISSION_COUNT];
+        mLongitudes = new double[MISSION_COUNT];
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            /* spread the missions over a few kilometers */
+            mLatitudes[i] = missions[i].getLatitude() + (i % 37) * 1e-3;
+            mLongitudes[i] = missions[i].getLongitude() - (i % 53) * 1e-3;
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public double distanceToBoxed() {
+        double sum = 0;
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            sum += mUser.distanceTo(Double.valueOf(mLatitudes[i]), Double.valueOf(mLongitudes[i]));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double distanceToExact() {
+        double sum = 0;
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            sum += mUser.distanceTo(mLatitudes[i], mLongitudes[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double distanceToHaversine() {
+        double sum = 0;
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            sum += mUser.distanceTo(mLatitudes[i], mLongitudes[i], Geodesy.Precision.HAVERSINE);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double distanceToEquirectangular() {
+        double sum = 0;
+        for (int i = 0; i < MISSION_COUNT; i++) {
+            sum += mUser.distanceTo(mLatitudes[i], mLongitudes[i], Geodesy.Precision.EQUIRECTANGULAR);
+        }
+        return sum;
+    }
+}
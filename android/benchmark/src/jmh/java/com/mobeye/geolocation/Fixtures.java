@@ -0,0 +1,47 @@
+package com.mobeye.geolocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic locations used by the benchmarks: a walk around Paris with one fix per second.
+ */
+final class Fixtures {
+    static final long START_TIME = 1_600_000_000_000L;
+
+    private Fixtures() {}
+
+    static MyLocation[] walk(int size) {
+        Random random = new Random(42);
+        MyLocation[] locations = new MyLocation[size];
+        double latitude = 48.8566;
+        double longitude = 2.3522;
+        for (int i = 0; i < size; i++) {
+            latitude += (random.nextDouble() - 0.5) * 1e-4;
+            longitude += (random.nextDouble() - 0.5) * 1e-4;
+            locations[i] = new MyLocation("fused", latitude, longitude, 5 + random.nextFloat() * 20,
+                    START_TIME + i * 1000L, false);
+        }
+        return locations;
+    }
+
+    static LocationRingBuffer ringBuffer(int size) {
+        LocationRingBuffer buffer = new LocationRingBuffer(size);
+        for (MyLocation location : walk(size)) {
+            buffer.add(location);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return locations of the buffer from the oldest to the newest one, as serialized by the previous versions
+     */
+    static List<MyLocation> toList(LocationRingBuffer buffer) {
+        List<MyLocation> locations = new ArrayList<>(buffer.size());
+        for (int age = buffer.size() - 1; age >= 0; age--) {
+            locations.add(buffer.get(age));
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,54 @@
+package com.mobeye.geolocation;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Former getLastLocations path: buffered locations serialized as a JSON string, then parsed again by JS.
+ * Kept as the reference of BufferBenchmark.
+ */
+final class LocationJson {
+
+    private LocationJson() {}
+
+    /**
+     * Serialize the `number` newest locations of the buffer as a JSON array, from the newest to the oldest one.
+     * Locations are copied column by column from the buffer and streamed, no MyLocation object is created.
+     * @param buffer buffer containing the locations
+     * @param number maximum number of locations
+     * @return JSON array of locations
+     * @throws IOException if the JSON can not be written
+     */
+    static String toJsonArray(LocationRingBuffer buffer, int number) throws IOException {
+        int count = Math.max(0, Math.min(number, buffer.size()));
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        float[] accuracies = new float[count];
+        long[] times = new long[count];
+        boolean[] mocks = new boolean[count];
+        String[] providers = new String[count];
+        count = buffer.copyLatest(count, latitudes, longitudes, accuracies, times, mocks, providers);
+
+        /* columns are ordered from the oldest to the newest location, JS expects the newest first */
+        StringWriter json = new StringWriter();
+        JsonWriter writer = new JsonWriter(json);
+        writer.beginArray();
+        for (int i = count - 1; i >= 0; i--) {
+            writer.beginObject();
+            if (providers[i] != null) {
+                writer.name("provider").value(providers[i]);
+            }
+            writer.name("longitude").value(longitudes[i]);
+            writer.name("latitude").value(latitudes[i]);
+            writer.name("accuracy").value(Float.valueOf(accuracies[i]));
+            writer.name("time").value(times[i]);
+            writer.name("mock").value(mocks[i]);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.close();
+        return json.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence of the last used location and reading of the configuration: the streaming MyLocation adapter and the
+ * ReadableMap reader against the reflective Gson paths. Run with the gc profiler for the allocations per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+    private static final Gson REFLECTIVE_GSON = new Gson();
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(MyLocation.class, new MyLocation.Adapter())
+            .create();
+
+    private MyLocation mLocation;
+    private String mLocationJson;
+    private JavaOnlyMap mConfiguration;
+
+    @Setup
+    public void setUp() {
+        mLocation = Fixtures.walk(1)[0];
+        mLocationJson = GSON.toJson(mLocation);
+        mConfiguration = new JavaOnlyMap();
+        mConfiguration.putString("desiredAccuracy", "BalancedPower");
+        mConfiguration.putDouble("distanceFilter", 100);
+        mConfiguration.putDouble("updateInterval", 10000);
+        mConfiguration.putDouble("bufferSize", 100);
+        mConfiguration.putDouble("maxWaitTime", 0);
+        mConfiguration.putDouble("maxBatchSize", 0);
+        mConfiguration.putDouble("minEmitInterval", 0);
+        mConfiguration.putDouble("minEmitDistance", 0);
+        mConfiguration.putDouble("significantDistance", 100);
+        mConfiguration.putDouble("significantInterval", 0);
+        mConfiguration.putBoolean("accuracyWeighted", false);
+        mConfiguration.putBoolean("historyEnabled", false);
+        mConfiguration.putDouble("historyRetentionDays", 7);
+    }
+
+    @Benchmark
+    public String writeLocationAdapter() {
+        return GSON.toJson(mLocation);
+    }
+
+    @Benchmark
+    public String writeLocationReflective() {
+        return REFLECTIVE_GSON.toJson(mLocation);
+    }
+
+    @Benchmark
+    public MyLocation readLocationAdapter() {
+        return GSON.fromJson(mLocationJson, MyLocation.class);
+    }
+
+    @Benchmark
+    public MyLocation readLocationReflective() {
+        return REFLECTIVE_GSON.fromJson(mLocationJson, MyLocation.class);
+    }
+
+    @Benchmark
+    public LocationConfiguration readConfiguration() throws InvalidConfigurationException {
+        return LocationConfiguration.fromReadableMap(mConfiguration);
+    }
+
+    /* previous configure: ReadableMap to HashMap to JsonElement tree, then reflection */
+    @Benchmark
+    public LocationConfiguration readConfigurationGsonTree() {
+        return REFLECTIVE_GSON.fromJson(REFLECTIVE_GSON.toJsonTree(mConfiguration.toHashMap()),
+                LocationConfiguration.class);
+    }
+}
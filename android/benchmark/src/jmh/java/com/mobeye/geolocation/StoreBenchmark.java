@@ -0,0 +1,88 @@
+package com.mobeye.geolocation;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writeBufferInStore and getStoredData: the binary location log against the previous JSON serialization.
+ * SharedPreferences are not part of the JSON measures, they would only add the XML rewrite of the whole blob.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoreBenchmark {
+    private static final Gson GSON = new Gson();
+    private static final Type LIST_TYPE = new TypeToken<List<MyLocation>>() {
+    }.getType();
+
+    @Param({"10", "1000"})
+    public int bufferSize;
+
+    private LocationRingBuffer mBuffer;
+    private File mFile;
+    private LocationLog mLog;
+    private String mJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mBuffer = Fixtures.ringBuffer(bufferSize);
+        mFile = File.createTempFile("locations", ".bin");
+        mLog = new LocationLog(mFile);
+        mLog.rewrite(mBuffer);
+        mJson = GSON.toJson(Fixtures.toList(mBuffer), LIST_TYPE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /* a new fix in background: append one record, compact from time to time */
+    @Benchmark
+    public long writeBinaryLog() throws IOException {
+        mLog.append(mBuffer, 1);
+        mLog.compactIfNeeded(mBuffer);
+        return mLog.getRecordCount();
+    }
+
+    /* previous writeBufferInStore: the whole buffer as JSON on every fix */
+    @Benchmark
+    public String writeJson() {
+        return GSON.toJson(Fixtures.toList(mBuffer), LIST_TYPE);
+    }
+
+    @Benchmark
+    public int readBinaryLog() throws IOException {
+        LocationRingBuffer buffer = new LocationRingBuffer(bufferSize);
+        new LocationLog(mFile).readInto(buffer);
+        return buffer.size();
+    }
+
+    /* previous getStoredData */
+    @Benchmark
+    public int readJson() {
+        List<MyLocation> locations = GSON.fromJson(mJson, LIST_TYPE);
+        LocationRingBuffer buffer = new LocationRingBuffer(bufferSize);
+        for (MyLocation location : locations) {
+            buffer.add(location);
+        }
+        return buffer.size();
+    }
+}
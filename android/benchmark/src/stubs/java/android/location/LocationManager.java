@@ -0,0 +1,10 @@
+package android.location;
+
+/**
+ * JVM stub of android.location.LocationManager, only the provider names.
+ */
+public class LocationManager {
+    public static final String GPS_PROVIDER = "gps";
+    public static final String NETWORK_PROVIDER = "network";
+    public static final String PASSIVE_PROVIDER = "passive";
+}
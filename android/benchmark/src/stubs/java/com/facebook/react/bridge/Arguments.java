@@ -0,0 +1,40 @@
+package com.facebook.react.bridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * JVM stub of the React Native Arguments, maps are backed by a HashMap and arrays by an ArrayList.
+ * The JNI cost of the native collections is not measured, only the work done on the Java side.
+ */
+public class Arguments {
+    public static WritableMap createMap() {
+        final HashMap<String, Object> map = new HashMap<>();
+        return new WritableMap() {
+            @Override
+            public void putDouble(String key, double value) {
+                map.put(key, value);
+            }
+
+            @Override
+            public void putBoolean(String key, boolean value) {
+                map.put(key, value);
+            }
+        };
+    }
+
+    public static WritableArray createArray() {
+        final ArrayList<Object> array = new ArrayList<>();
+        return new WritableArray() {
+            @Override
+            public void pushDouble(double value) {
+                array.add(value);
+            }
+
+            @Override
+            public void pushMap(WritableMap map) {
+                array.add(map);
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.facebook.react.bridge;
+
+import java.util.HashMap;
+
+/**
+ * JVM stub of the React Native JavaOnlyMap, a ReadableMap backed by a HashMap.
+ * Numbers are stored as doubles, like the values sent by JS.
+ */
+public class JavaOnlyMap implements ReadableMap {
+    private final HashMap<String, Object> mBackingMap = new HashMap<>();
+
+    public void putString(String key, String value) {
+        mBackingMap.put(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+        mBackingMap.put(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        mBackingMap.put(key, value);
+    }
+
+    @Override
+    public boolean hasKey(String name) {
+        return mBackingMap.containsKey(name);
+    }
+
+    @Override
+    public boolean isNull(String name) {
+        return mBackingMap.get(name) == null;
+    }
+
+    @Override
+    public ReadableType getType(String name) {
+        Object value = mBackingMap.get(name);
+        if (value == null) {
+            return ReadableType.Null;
+        } else if (value instanceof Boolean) {
+            return ReadableType.Boolean;
+        } else if (value instanceof Double) {
+            return ReadableType.Number;
+        }
+        return ReadableType.String;
+    }
+
+    @Override
+    public boolean getBoolean(String name) {
+        return (Boolean) mBackingMap.get(name);
+    }
+
+    @Override
+    public double getDouble(String name) {
+        return (Double) mBackingMap.get(name);
+    }
+
+    @Override
+    public String getString(String name) {
+        return (String) mBackingMap.get(name);
+    }
+
+    @Override
+    public HashMap<String, Object> toHashMap() {
+        return new HashMap<>(mBackingMap);
+    }
+}
@@ -0,0 +1,22 @@
+package com.facebook.react.bridge;
+
+import java.util.HashMap;
+
+/**
+ * JVM stub of the React Native ReadableMap, only the methods used by the benchmarked classes.
+ */
+public interface ReadableMap {
+    boolean hasKey(String name);
+
+    boolean isNull(String name);
+
+    ReadableType getType(String name);
+
+    boolean getBoolean(String name);
+
+    double getDouble(String name);
+
+    String getString(String name);
+
+    HashMap<String, Object> toHashMap();
+}
@@ -0,0 +1,13 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM stub of the React Native ReadableType.
+ */
+public enum ReadableType {
+    Null,
+    Boolean,
+    Number,
+    String,
+    Map,
+    Array,
+}
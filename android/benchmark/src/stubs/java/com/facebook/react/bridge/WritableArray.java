@@ -0,0 +1,10 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM stub of the React Native WritableArray, only the methods used by the benchmarked classes.
+ */
+public interface WritableArray {
+    void pushDouble(double value);
+
+    void pushMap(WritableMap map);
+}
@@ -0,0 +1,10 @@
+package com.facebook.react.bridge;
+
+/**
+ * JVM stub of the React Native WritableMap, only the methods used by the benchmarked classes.
+ */
+public interface WritableMap {
+    void putDouble(String key, double value);
+
+    void putBoolean(String key, boolean value);
+}
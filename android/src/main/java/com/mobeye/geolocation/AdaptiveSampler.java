@@ -0,0 +1,154 @@
+package com.mobeye.geolocation;
+
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.Priority;
+
+/**
+ * Adapt the location request to the motion of the user, derived from the newest buffered locations.
+ * - STATIONARY: every location of the last STATIONARY_DURATION is close to the newest one. The priority is lowered
+ *   by one step, the interval is multiplied by STATIONARY_BACKOFF and the provider waits for a move of at least
+ *   STATIONARY_DISPLACEMENT, so a parked device is rarely woken up and the next location means it moves again.
+ * - FAST: the speed over the last SPEED_WINDOW is above FAST_SPEED. The interval and the displacement are halved to
+ *   keep a detailed track. The state is left below SLOW_SPEED, so a speed around the threshold does not flip it.
+ * - MOVING: the request of the profile is used as is.
+ * Methods are synchronized: locations arrive on the location thread while the request is built on the JS and main
+ * threads.
+ */
+public class AdaptiveSampler {
+    public enum Motion {
+        STATIONARY,
+        MOVING,
+        FAST,
+    }
+
+    /* duration in milliseconds during which the user must stay around the same place to be stationary */
+    private static final long STATIONARY_DURATION = 2 * 60 * 1000;
+    /* locations closer than this distance in meters, or than the accuracy of the newest one, are the same place */
+    private static final float STATIONARY_RADIUS = 25;
+    private static final int STATIONARY_BACKOFF = 4;
+    private static final float STATIONARY_DISPLACEMENT = 50;
+    /* duration in milliseconds over which the speed is measured */
+    private static final long SPEED_WINDOW = 60 * 1000;
+    /* speeds in m/s */
+    private static final float FAST_SPEED = 10;
+    private static final float SLOW_SPEED = 7;
+    /* shortest interval in milliseconds when moving fast */
+    private static final long MIN_FAST_INTERVAL = 1000;
+
+    private boolean mEnabled = false;
+    private Motion mMotion = Motion.MOVING;
+
+    /**
+     * @param enabled adapt the request, it is left untouched otherwise
+     */
+    public synchronized void configure(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            mMotion = Motion.MOVING;
+        }
+    }
+
+    public synchronized Motion getMotion() {
+        return mMotion;
+    }
+
+    /**
+     * Update the motion with the newest buffered locations.
+     * @return true if the motion changed, the request must then be adjusted again
+     */
+    public synchronized boolean update(LocationRingBuffer buffer) {
+        if (!mEnabled) {
+            return false;
+        }
+        Motion motion;
+        synchronized (buffer) {
+            motion = computeMotion(buffer);
+        }
+        if (motion == null || motion == mMotion) {
+            return false;
+        }
+        mMotion = motion;
+        return true;
+    }
+
+    /**
+     * @return the motion shown by the buffer, null if it can not be decided yet
+     */
+    private Motion computeMotion(LocationRingBuffer buffer) {
+        int size = buffer.size();
+        if (size < 2) {
+            return null;
+        }
+        double latitude = buffer.getLatitude(0);
+        double longitude = buffer.getLongitude(0);
+        long time = buffer.getTime(0);
+        float radius = Math.max(STATIONARY_RADIUS, buffer.getAccuracy(0));
+
+        /* the oldest location is reached only if every location of the buffer is around the newest one */
+        boolean stationary = false;
+        int age = 1;
+        for (; age < size; age++) {
+            if (Geodesy.haversine(latitude, longitude, buffer.getLatitude(age), buffer.getLongitude(age)) > radius) {
+                break;
+            }
+            if (time - buffer.getTime(age) >= STATIONARY_DURATION) {
+                stationary = true;
+                break;
+            }
+        }
+        if (stationary) {
+            return Motion.STATIONARY;
+        }
+
+        /* speed between the newest location and the oldest one of the window */
+        int oldest = 0;
+        while (oldest + 1 < size && time - buffer.getTime(oldest + 1) <= SPEED_WINDOW) {
+            oldest++;
+        }
+        long duration = time - buffer.getTime(oldest);
+        if (oldest == 0 || duration <= 0) {
+            /* a single location after a long pause is a move if it left the stationary place */
+            return age < size ? Motion.MOVING : null;
+        }
+        double speed = Geodesy.haversine(latitude, longitude, buffer.getLatitude(oldest),
+                buffer.getLongitude(oldest)) * 1000 / duration;
+        if (speed > FAST_SPEED || (mMotion == Motion.FAST && speed >= SLOW_SPEED)) {
+            return Motion.FAST;
+        }
+        return Motion.MOVING;
+    }
+
+    /**
+     * Adjust a request built from the active profile to the current motion.
+     */
+    public synchronized void adjust(LocationRequest request) {
+        switch (mMotion) {
+            case STATIONARY:
+                request.setPriority(lowerPriority(request.getPriority()));
+                request.setInterval(request.getInterval() * STATIONARY_BACKOFF);
+                request.setSmallestDisplacement(Math.max(request.getSmallestDisplacement(),
+                        STATIONARY_DISPLACEMENT));
+                break;
+            case FAST:
+                /* faster, but never slower than the configured interval when it is below the minimum */
+                request.setInterval(Math.min(request.getInterval(),
+                        Math.max(request.getInterval() / 2, MIN_FAST_INTERVAL)));
+                request.setSmallestDisplacement(request.getSmallestDisplacement() / 2);
+                break;
+            case MOVING:
+            default:
+                break;
+        }
+    }
+
+    private static int lowerPriority(int priority) {
+        switch (priority) {
+            case Priority.PRIORITY_HIGH_ACCURACY:
+                return Priority.PRIORITY_BALANCED_POWER_ACCURACY;
+            case Priority.PRIORITY_BALANCED_POWER_ACCURACY:
+                return Priority.PRIORITY_LOW_POWER;
+            default:
+                return priority;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.mobeye.geolocation;
+
+import android.os.SystemClock;
+
+import com.google.android.gms.location.Priority;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters and latency histograms of the location pipeline, to measure what the native side costs in production.
+ * Nothing is recorded while disabled: each record method first reads a volatile flag, and timers return 0 without
+ * reading the clock, so the instrumentation costs a branch per call.
+ * Methods are synchronized once the flag is read: samples are recorded on the location thread while the snapshot is
+ * read from the native modules thread.
+ */
+public class Diagnostics {
+    private volatile boolean mEnabled = false;
+
+    private long mCallbackCount = 0;
+    private long mFixCount = 0;
+    private long mAcceptedFixCount = 0;
+    private long mFirstFixTime = -1;
+    private long mLastFixTime = -1;
+    private long mRegistrationCount = 0;
+    private long mSkippedRegistrationCount = 0;
+    private long mSerializedBytes = 0;
+    private long mStoreWrittenBytes = 0;
+    /* time in milliseconds spent with each registered priority, and the current one */
+    private final Map<String, Long> mPriorityTimes = new LinkedHashMap<>();
+    private String mCurrentPriority;
+    private long mCurrentPrioritySince;
+
+    /* in milliseconds */
+    private final Histogram mFixAges = new Histogram();
+    private final Histogram mArrivalIntervals = new Histogram();
+    /* in microseconds */
+    private final Histogram mEmitLatencies = new Histogram();
+    private final Histogram mSerializationTimes = new Histogram();
+    private final Histogram mStoreWriteTimes = new Histogram();
+
+    /**
+     * Listener notified on the location thread after each location callback, while the diagnostics are enabled.
+     */
+    public interface Listener {
+        void onLocationCallback(Diagnostics diagnostics);
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && !mEnabled) {
+            /* the time of the current priority is counted from now */
+            mCurrentPrioritySince = SystemClock.elapsedRealtime();
+        }
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return current time in nanoseconds to measure a duration, 0 if disabled
+     */
+    public long startTimer() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a location callback.
+     * @param fixCount number of locations delivered
+     * @param acceptedCount number of locations buffered
+     */
+    public void onCallback(int fixCount, int acceptedCount) {
+        if (!mEnabled) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            mCallbackCount++;
+            mFixCount += fixCount;
+            mAcceptedFixCount += acceptedCount;
+            if (mLastFixTime >= 0) {
+                mArrivalIntervals.record(now - mLastFixTime);
+            } else {
+                mFirstFixTime = now;
+            }
+            mLastFixTime = now;
+        }
+    }
+
+    /**
+     * Record the age of a location when it is delivered.
+     * @param elapsedRealtimeNanos time of the location, from the elapsed realtime clock
+     */
+    public void onFix(long elapsedRealtimeNanos) {
+        if (!mEnabled) {
+            return;
+        }
+        long age = (SystemClock.elapsedRealtimeNanos() - elapsedRealtimeNanos) / 1000000;
+        synchronized (this) {
+            mFixAges.record(age);
+        }
+    }
+
+    /**
+     * @param start value of startTimer when the location callback started
+     */
+    public void onEmitted(long start) {
+        if (!mEnabled || start == 0) {
+            return;
+        }
+        synchronized (this) {
+            mEmitLatencies.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /**
+     * @param start value of startTimer before the serialization
+     * @param bytes number of serialized bytes
+     */
+    public void onSerialized(long start, long bytes) {
+        if (!mEnabled || start == 0) {
+            return;
+        }
+        synchronized (this) {
+            mSerializationTimes.record((System.nanoTime() - start) / 1000);
+            mSerializedBytes += bytes;
+        }
+    }
+
+    /**
+     * @param start value of startTimer before the write
+     * @param bytes number of written bytes
+     */
+    public void onStoreWritten(long start, long bytes) {
+        if (!mEnabled || start == 0) {
+            return;
+        }
+        synchronized (this) {
+            mStoreWriteTimes.record((System.nanoTime() - start) / 1000);
+            mStoreWrittenBytes += bytes;
+        }
+    }
+
+    /**
+     * Record a request of location updates, the time spent with each priority is counted from here.
+     * The priority is followed even while disabled, so the current one is known once enabled.
+     * @param priority priority of the request, -1 when the updates are removed
+     * @param now current time in milliseconds, from the elapsed realtime clock
+     */
+    public synchronized void onRegistration(int priority, long now) {
+        if (mCurrentPriority != null && mEnabled) {
+            addPriorityTime(mCurrentPriority, now - mCurrentPrioritySince);
+        }
+        mCurrentPriority = priority >= 0 ? priorityName(priority) : null;
+        mCurrentPrioritySince = now;
+        if (mEnabled && priority >= 0) {
+            mRegistrationCount++;
+        }
+    }
+
+    /**
+     * Record a request identical to the registered one, so the provider was left untouched.
+     */
+    public void onSkippedRegistration() {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (this) {
+            mSkippedRegistrationCount++;
+        }
+    }
+
+    public synchronized long getCallbackCount() {
+        return mCallbackCount;
+    }
+
+    public synchronized long getFixCount() {
+        return mFixCount;
+    }
+
+    public synchronized long getAcceptedFixCount() {
+        return mAcceptedFixCount;
+    }
+
+    /**
+     * @return number of delivered locations per minute between the first and the last callback, 0 if unknown
+     */
+    public synchronized double getFixesPerMinute() {
+        long duration = mLastFixTime - mFirstFixTime;
+        return duration > 0 ? mFixCount * 60000.0 / duration : 0;
+    }
+
+    public synchronized long getRegistrationCount() {
+        return mRegistrationCount;
+    }
+
+    public synchronized long getSkippedRegistrationCount() {
+        return mSkippedRegistrationCount;
+    }
+
+    public synchronized long getSerializedBytes() {
+        return mSerializedBytes;
+    }
+
+    public synchronized long getStoreWrittenBytes() {
+        return mStoreWrittenBytes;
+    }
+
+    /**
+     * @param now current time in milliseconds, from the elapsed realtime clock
+     * @return time in milliseconds spent with each priority, including the current one
+     */
+    public synchronized Map<String, Long> getPriorityTimes(long now) {
+        Map<String, Long> times = new LinkedHashMap<>(mPriorityTimes);
+        if (mCurrentPriority != null && mEnabled) {
+            Long time = times.get(mCurrentPriority);
+            times.put(mCurrentPriority, (time != null ? time : 0) + now - mCurrentPrioritySince);
+        }
+        return times;
+    }
+
+    public synchronized Histogram getFixAges() {
+        return mFixAges.copy();
+    }
+
+    public synchronized Histogram getArrivalIntervals() {
+        return mArrivalIntervals.copy();
+    }
+
+    public synchronized Histogram getEmitLatencies() {
+        return mEmitLatencies.copy();
+    }
+
+    public synchronized Histogram getSerializationTimes() {
+        return mSerializationTimes.copy();
+    }
+
+    public synchronized Histogram getStoreWriteTimes() {
+        return mStoreWriteTimes.copy();
+    }
+
+    private void addPriorityTime(String priority, long duration) {
+        Long time = mPriorityTimes.get(priority);
+        mPriorityTimes.put(priority, (time != null ? time : 0) + duration);
+    }
+
+    private static String priorityName(int priority) {
+        switch (priority) {
+            case Priority.PRIORITY_HIGH_ACCURACY:
+                return "HighAccuracy";
+            case Priority.PRIORITY_BALANCED_POWER_ACCURACY:
+                return "BalancedPowerAccuracy";
+            case Priority.PRIORITY_LOW_POWER:
+                return "LowPower";
+            case Priority.PRIORITY_PASSIVE:
+                return "Passive";
+            default:
+                return String.valueOf(priority);
+        }
+    }
+
+    /**
+     * Histogram of positive values with a bucket per power of two: recording a value is a few operations and the
+     * histogram has a fixed size whatever the number of values. Percentiles are the upper bound of their bucket, so
+     * they are at most twice the exact value.
+     */
+    public static class Histogram {
+        private static final int BUCKET_COUNT = 64;
+
+        /* bucket i holds the values of [2^(i-1), 2^i[, bucket 0 holds 0 */
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount = 0;
+        private long mSum = 0;
+        private long mMax = 0;
+
+        public void record(long value) {
+            value = Math.max(value, 0);
+            mBuckets[BUCKET_COUNT - Long.numberOfLeadingZeros(value)]++;
+            mCount++;
+            mSum += value;
+            mMax = Math.max(mMax, value);
+        }
+
+        public void clear() {
+            Arrays.fill(mBuckets, 0);
+            mCount = 0;
+            mSum = 0;
+            mMax = 0;
+        }
+
+        public Histogram copy() {
+            Histogram copy = new Histogram();
+            System.arraycopy(mBuckets, 0, copy.mBuckets, 0, BUCKET_COUNT);
+            copy.mCount = mCount;
+            copy.mSum = mSum;
+            copy.mMax = mMax;
+            return copy;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getMean() {
+            return mCount > 0 ? (double) mSum / mCount : 0;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * @param percentile percentile between 0 and 100
+         * @return upper bound of the bucket of the percentile, never above the maximum, 0 if there is no value
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(mCount * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upperBound, mMax);
+                }
+            }
+            return mMax;
+        }
+    }
+}
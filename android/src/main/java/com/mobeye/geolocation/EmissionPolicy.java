@@ -0,0 +1,88 @@
+package com.mobeye.geolocation;
+
+/**
+ * Decide when a new location is sent to JS.
+ * A location is dropped if it is closer than `minEmitDistance` to the last emitted location, and delayed if the last
+ * emission is more recent than `minEmitInterval`. Delayed locations are coalesced: only the latest one is emitted
+ * when the interval is over.
+ * Methods are synchronized: the configuration is changed from the JS thread while locations arrive on the location
+ * thread.
+ */
+public class EmissionPolicy {
+    public static final long DROP = -1;
+    public static final long EMIT_NOW = 0;
+
+    private long mMinEmitInterval = 0;
+    private float mMinEmitDistance = 0;
+    private boolean mHasEmitted = false;
+    private double mLastLatitude;
+    private double mLastLongitude;
+    private long mLastEmitTime;
+
+    private long mEmittedCount = 0;
+    private long mDroppedCount = 0;
+    private long mCoalescedCount = 0;
+
+    /**
+     * @param minEmitInterval minimum time in milliseconds between two emissions, 0 to disable
+     * @param minEmitDistance minimum distance in meters from the last emitted location, 0 to disable
+     */
+    public synchronized void configure(long minEmitInterval, float minEmitDistance) {
+        mMinEmitInterval = Math.max(minEmitInterval, 0);
+        mMinEmitDistance = Math.max(minEmitDistance, 0);
+    }
+
+    /**
+     * Decide what to do with a new location.
+     * @param now current time in milliseconds, from a monotonic clock
+     * @return DROP if the location must not be emitted, EMIT_NOW if it must be emitted now, otherwise the delay in
+     * milliseconds before the emission
+     */
+    public synchronized long onLocation(double latitude, double longitude, long now) {
+        if (!mHasEmitted) {
+            return EMIT_NOW;
+        }
+        if (mMinEmitDistance > 0) {
+            if (Geodesy.haversine(mLastLatitude, mLastLongitude, latitude, longitude) < mMinEmitDistance) {
+                mDroppedCount++;
+                return DROP;
+            }
+        }
+        long elapsed = now - mLastEmitTime;
+        if (elapsed < mMinEmitInterval) {
+            return mMinEmitInterval - elapsed;
+        }
+        return EMIT_NOW;
+    }
+
+    /**
+     * Record an emission.
+     * @param now current time in milliseconds, from a monotonic clock
+     */
+    public synchronized void onEmitted(double latitude, double longitude, long now) {
+        mHasEmitted = true;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+        mLastEmitTime = now;
+        mEmittedCount++;
+    }
+
+    /**
+     * Record a delayed location replaced by a newer one.
+     */
+    public synchronized void onCoalesced() {
+        mCoalescedCount++;
+    }
+
+    public synchronized long getEmittedCount() {
+        return mEmittedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+}
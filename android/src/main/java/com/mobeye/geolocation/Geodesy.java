@@ -0,0 +1,153 @@
+package com.mobeye.geolocation;
+
+/**
+ * Distance computations between two points given by their latitude and longitude in degrees.
+ * Every method works on primitives and does not allocate, so it can be called in hot loops.
+ * Three precisions are available:
+ * - EXACT: Vincenty's inverse formula on the WGS84 ellipsoid, the same computation as Location.distanceBetween.
+ * - HAVERSINE: great-circle distance on a sphere, within 0.6% of EXACT.
+ * - EQUIRECTANGULAR: flat projection around the mean latitude, within 0.6% of EXACT below 10 km. It is the cheapest
+ *   one but only suited to short distances (ranking nearby points, thresholds of a few hundred meters).
+ */
+public final class Geodesy {
+    /* mean radius of the Earth in meters */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /* WGS84 ellipsoid */
+    private static final double SEMI_MAJOR_AXIS = 6378137.0;
+    private static final double SEMI_MINOR_AXIS = 6356752.3142;
+    private static final double FLATTENING = (SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS) / SEMI_MAJOR_AXIS;
+    private static final int MAX_ITERATIONS = 20;
+    private static final double CONVERGENCE_THRESHOLD = 1.0e-12;
+
+    public enum Precision {
+        EXACT,
+        HAVERSINE,
+        EQUIRECTANGULAR,
+    }
+
+    private Geodesy() {}
+
+    /**
+     * Compute the distance between two points in meters with the exact precision.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return vincenty(latitude1, longitude1, latitude2, longitude2);
+    }
+
+    /**
+     * Compute the distance between two points in meters.
+     * @param precision precision of the computation
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2,
+                                  Precision precision) {
+        switch (precision) {
+            case HAVERSINE:
+                return haversine(latitude1, longitude1, latitude2, longitude2);
+            case EQUIRECTANGULAR:
+                return equirectangular(latitude1, longitude1, latitude2, longitude2);
+            case EXACT:
+            default:
+                return vincenty(latitude1, longitude1, latitude2, longitude2);
+        }
+    }
+
+    /**
+     * Great-circle distance in meters on a sphere of radius EARTH_RADIUS.
+     */
+    public static double haversine(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinDeltaPhi * sinDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Distance in meters on a flat projection around the mean latitude of both points.
+     */
+    public static double equirectangular(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double deltaLongitude = longitude2 - longitude1;
+        /* take the shortest way around the antimeridian */
+        if (deltaLongitude > 180) {
+            deltaLongitude -= 360;
+        } else if (deltaLongitude < -180) {
+            deltaLongitude += 360;
+        }
+        double x = Math.toRadians(deltaLongitude) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = Math.toRadians(latitude2 - latitude1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Distance in meters on the WGS84 ellipsoid with Vincenty's inverse formula.
+     * Based on http://www.ngs.noaa.gov/PUBS_LIB/inverse.pdf, like Location.distanceBetween.
+     */
+    public static double vincenty(double latitude1, double longitude1, double latitude2, double longitude2) {
+        if (latitude1 == latitude2 && longitude1 == longitude2) {
+            return 0;
+        }
+        double a = SEMI_MAJOR_AXIS;
+        double b = SEMI_MINOR_AXIS;
+        double aSqMinusBSqOverBSq = (a * a - b * b) / (b * b);
+
+        double l = Math.toRadians(longitude2 - longitude1);
+        double u1 = Math.atan((1.0 - FLATTENING) * Math.tan(Math.toRadians(latitude1)));
+        double u2 = Math.atan((1.0 - FLATTENING) * Math.tan(Math.toRadians(latitude2)));
+
+        double cosU1 = Math.cos(u1);
+        double cosU2 = Math.cos(u2);
+        double sinU1 = Math.sin(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU1cosU2 = cosU1 * cosU2;
+        double sinU1sinU2 = sinU1 * sinU2;
+
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double coefficientA = 0.0;
+        double cosSqAlpha;
+        double cos2SM;
+        double cosSigma;
+        double sinSigma;
+        double cosLambda;
+        double sinLambda;
+
+        double lambda = l;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double lambdaOrig = lambda;
+            cosLambda = Math.cos(lambda);
+            sinLambda = Math.sin(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSqSigma = t1 * t1 + t2 * t2;
+            sinSigma = Math.sqrt(sinSqSigma);
+            cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = (sinSigma == 0) ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SM = (cosSqAlpha == 0) ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+
+            double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+            coefficientA = 1 + (uSquared / 16384.0)
+                    * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+            double coefficientB = (uSquared / 1024.0)
+                    * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+            double coefficientC = (FLATTENING / 16.0) * cosSqAlpha * (4.0 + FLATTENING * (4.0 - 3.0 * cosSqAlpha));
+            double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = coefficientB * sinSigma * (cos2SM + (coefficientB / 4.0)
+                    * (cosSigma * (-1.0 + 2.0 * cos2SMSq) - (coefficientB / 6.0) * cos2SM
+                    * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SMSq)));
+
+            lambda = l + (1.0 - coefficientC) * FLATTENING * sinAlpha
+                    * (sigma + coefficientC * sinSigma * (cos2SM + coefficientC * cosSigma
+                    * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            if (Math.abs(lambda - lambdaOrig) < CONVERGENCE_THRESHOLD) {
+                break;
+            }
+        }
+        /* without convergence (nearly antipodal points) the last estimate is kept */
+        return b * coefficientA * (sigma - deltaSigma);
+    }
+}
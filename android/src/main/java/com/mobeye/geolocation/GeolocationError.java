@@ -12,6 +12,13 @@ public enum GeolocationError {
             9,
             "Location not determined: too strong interference from nearby magnetic fields"
     ), // iOS only
+    HISTORY_DISABLED(10, "Location history is not enabled"), // Android only
+    HISTORY_FAILURE(11, "Location history can not be read"), // Android only
+    INVALID_ACCURACY_LEVEL(12, "Desired accuracy is not a valid accuracy level"), // Android only
+    INVALID_BUFFER_SIZE(13, "Buffer size must be a positive integer"), // Android only
+    INVALID_CONFIGURATION_VALUE(14, "Configuration value has a wrong type or is out of range"), // Android only
+    INVALID_POINT_OF_INTEREST(15, "Point of interest must have an id, coordinates and a positive radius"), // Android only
+    INVALID_TRACKING_OPTIONS(16, "Background tracking needs a notification title and text, and a non-negative backlog tolerance"), // Android only
     DEFAULT_ERROR(1000, "Default error");
 
     private final int code;
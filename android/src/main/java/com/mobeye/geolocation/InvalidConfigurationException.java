@@ -0,0 +1,23 @@
+package com.mobeye.geolocation;
+
+/**
+ * Thrown when the configuration sent by JS is invalid.
+ */
+public class InvalidConfigurationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final GeolocationError error;
+
+    /**
+     * @param error error sent to JS
+     * @param field name of the invalid field
+     */
+    public InvalidConfigurationException(GeolocationError error, String field) {
+        super(error.getDescription() + " (" + field + ")");
+        this.error = error;
+    }
+
+    public GeolocationError getError() {
+        return error;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mobeye.geolocation;
+
+/**
+ * Constant velocity Kalman filter smoothing the locations before they are buffered.
+ * Positions are filtered in meters on a plane around a reference point, both axes share the same covariance since
+ * they have the same measurement noise (the accuracy of the fix) and the same process noise (the unknown
+ * acceleration of the user). The filter is reset when the fixes are too far apart in time.
+ * The result of the last update is read with getLatitude and getLongitude, so no object is created per fix.
+ * Methods are synchronized: the configuration is changed from the JS thread while locations arrive on the location
+ * thread.
+ */
+public class KalmanFilter {
+    /* fixes separated by more than this duration in milliseconds restart the filter */
+    private static final long RESET_INTERVAL = 60 * 1000;
+    /* initial variance of the velocity, in (m/s)^2, the user may be walking or driving */
+    private static final double INITIAL_VELOCITY_VARIANCE = 100;
+    /* the accuracy of a fix is never better than a meter */
+    private static final float MIN_ACCURACY = 1;
+
+    private boolean mEnabled = false;
+    private double mProcessNoise = 0;
+
+    private boolean mInitialized = false;
+    private long mLastTime;
+    /* reference point of the plane */
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLongitude;
+    /* state: position in meters and velocity in m/s on both axes */
+    private double mX;
+    private double mY;
+    private double mVelocityX;
+    private double mVelocityY;
+    /* covariance of the state of one axis */
+    private double mPositionVariance;
+    private double mCovariance;
+    private double mVelocityVariance;
+
+    private double mLatitude;
+    private double mLongitude;
+
+    /**
+     * @param enabled smooth the locations, they are left untouched otherwise
+     * @param processNoise standard deviation of the acceleration of the user in m/s^2
+     */
+    public synchronized void configure(boolean enabled, double processNoise) {
+        if (enabled != mEnabled || processNoise != mProcessNoise) {
+            mInitialized = false;
+        }
+        mEnabled = enabled;
+        mProcessNoise = Math.max(processNoise, 0);
+    }
+
+    public synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Add a new fix to the filter, the smoothed position is then read with getLatitude and getLongitude.
+     * A fix older than the previous one is not filtered.
+     * @param accuracy accuracy of the fix in meters, used as the measurement noise
+     * @param time time of the fix in milliseconds
+     */
+    public synchronized void update(double latitude, double longitude, float accuracy, long time) {
+        double measurementVariance = Math.max(accuracy, MIN_ACCURACY);
+        measurementVariance *= measurementVariance;
+        if (!mEnabled || (mInitialized && time < mLastTime)) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            return;
+        }
+        if (!mInitialized || time - mLastTime > RESET_INTERVAL) {
+            initialize(latitude, longitude, measurementVariance, time);
+            return;
+        }
+
+        /* predict */
+        double dt = (time - mLastTime) / 1000.0;
+        mX += mVelocityX * dt;
+        mY += mVelocityY * dt;
+        double q = mProcessNoise * mProcessNoise;
+        double dt2 = dt * dt;
+        mPositionVariance += dt * (2 * mCovariance + dt * mVelocityVariance) + q * dt2 * dt2 / 4;
+        mCovariance += dt * mVelocityVariance + q * dt2 * dt / 2;
+        mVelocityVariance += q * dt2;
+
+        /* correct with the measured position */
+        double measuredX = (longitude - mOriginLongitude) * mMetersPerDegreeLongitude;
+        double measuredY = (latitude - mOriginLatitude) * metersPerDegreeLatitude();
+        double innovationVariance = mPositionVariance + measurementVariance;
+        double positionGain = mPositionVariance / innovationVariance;
+        double velocityGain = mCovariance / innovationVariance;
+        double innovationX = measuredX - mX;
+        double innovationY = measuredY - mY;
+        mX += positionGain * innovationX;
+        mY += positionGain * innovationY;
+        mVelocityX += velocityGain * innovationX;
+        mVelocityY += velocityGain * innovationY;
+        mVelocityVariance -= velocityGain * mCovariance;
+        mCovariance -= velocityGain * mPositionVariance;
+        mPositionVariance -= positionGain * mPositionVariance;
+
+        mLastTime = time;
+        mLatitude = mOriginLatitude + mY / metersPerDegreeLatitude();
+        mLongitude = mOriginLongitude + mX / mMetersPerDegreeLongitude;
+    }
+
+    /**
+     * @return latitude of the last update
+     */
+    public synchronized double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return longitude of the last update
+     */
+    public synchronized double getLongitude() {
+        return mLongitude;
+    }
+
+    private void initialize(double latitude, double longitude, double measurementVariance, long time) {
+        mInitialized = true;
+        mLastTime = time;
+        mOriginLatitude = latitude;
+        mOriginLongitude = longitude;
+        mMetersPerDegreeLongitude = metersPerDegreeLatitude() * Math.cos(Math.toRadians(latitude));
+        mX = 0;
+        mY = 0;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mPositionVariance = measurementVariance;
+        mCovariance = 0;
+        mVelocityVariance = INITIAL_VELOCITY_VARIANCE;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    private static double metersPerDegreeLatitude() {
+        return Math.toRadians(Geodesy.EARTH_RADIUS);
+    }
+}
@@ -1,17 +1,16 @@
 package com.mobeye.geolocation;
 
 import com.google.android.gms.location.Priority;
-import com.google.gson.annotations.SerializedName;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public enum LevelAccuracy {
-    @SerializedName("PowerSaving") POWER_SAVING,
-    @SerializedName("BalancedPower") BALANCED_POWER,
-    @SerializedName("BestAccuracy") BEST_ACCURACY,
-    @SerializedName("NavigationAccuracy") NAVIGATION_ACCURACY;
+    POWER_SAVING("PowerSaving"),
+    BALANCED_POWER("BalancedPower"),
+    BEST_ACCURACY("BestAccuracy"),
+    NAVIGATION_ACCURACY("NavigationAccuracy");
 
     static final Map<LevelAccuracy, Integer> PRIORITY_MAP;
     static {
@@ -22,4 +21,28 @@ public enum LevelAccuracy {
         tmpMap.put(LevelAccuracy.NAVIGATION_ACCURACY, Priority.PRIORITY_HIGH_ACCURACY);
         PRIORITY_MAP = Collections.unmodifiableMap(tmpMap);
     }
-}
\ No newline at end of file
+
+    /* name of the level in the JS configuration */
+    private final String value;
+
+    LevelAccuracy(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param value name of the level in the JS configuration
+     * @return the level, null if the name is unknown
+     */
+    public static LevelAccuracy fromValue(String value) {
+        for (LevelAccuracy level : values()) {
+            if (level.value.equals(value)) {
+                return level;
+            }
+        }
+        return null;
+    }
+}
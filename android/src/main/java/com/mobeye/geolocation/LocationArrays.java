@@ -0,0 +1,72 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+/**
+ * Packed representation of buffered locations sent to JS.
+ * Locations are flattened in a single array of numbers, PACKED_STRIDE values per location:
+ * [latitude, longitude, accuracy, time, mock (0 or 1), latitude, ...].
+ * Crossing the bridge with one array of doubles is much cheaper than one map per location, and JS unpacks it
+ * without parsing a string (see unpackLocations in src/index.ts).
+ */
+public final class LocationArrays {
+    public static final int PACKED_STRIDE = 5;
+
+    private LocationArrays() {}
+
+    /**
+     * Pack the `number` newest locations of the buffer, from the newest to the oldest one.
+     * @param buffer buffer containing the locations
+     * @param number maximum number of locations
+     * @return packed locations
+     */
+    public static WritableArray toPackedArray(LocationRingBuffer buffer, int number) {
+        int count = Math.max(0, Math.min(number, buffer.size()));
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        float[] accuracies = new float[count];
+        long[] times = new long[count];
+        boolean[] mocks = new boolean[count];
+        count = buffer.copyLatest(count, latitudes, longitudes, accuracies, times, mocks, null);
+
+        /* columns are ordered from the oldest to the newest location, JS expects the newest first */
+        WritableArray packed = Arguments.createArray();
+        for (int i = count - 1; i >= 0; i--) {
+            packed.pushDouble(latitudes[i]);
+            packed.pushDouble(longitudes[i]);
+            packed.pushDouble(accuracies[i]);
+            packed.pushDouble(times[i]);
+            packed.pushDouble(mocks[i] ? 1 : 0);
+        }
+        return packed;
+    }
+
+    /**
+     * Pack the locations of the given columns at the given indices, in the order of the indices.
+     * @param indices indices of the packed locations in the columns
+     * @param count number of indices to read
+     * @return packed locations
+     */
+    public static WritableArray toPackedArray(double[] latitudes, double[] longitudes, float[] accuracies,
+                                              long[] times, boolean[] mocks, int[] indices, int count) {
+        WritableArray packed = Arguments.createArray();
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            push(packed, latitudes[index], longitudes[index], accuracies[index], times[index], mocks[index]);
+        }
+        return packed;
+    }
+
+    /**
+     * Append a location to a packed array.
+     */
+    public static void push(WritableArray packed, double latitude, double longitude, float accuracy, long time,
+                            boolean mock) {
+        packed.pushDouble(latitude);
+        packed.pushDouble(longitude);
+        packed.pushDouble(accuracy);
+        packed.pushDouble(time);
+        packed.pushDouble(mock ? 1 : 0);
+    }
+}
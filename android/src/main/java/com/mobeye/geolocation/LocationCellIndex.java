@@ -0,0 +1,434 @@
+package com.mobeye.geolocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental index of the newest known locations (buffered and in the history) by geohash cell, to answer "have we
+ * been here" queries without scanning every location.
+ * Locations are stored in their order of arrival in primitive columns used as a growing ring, each one identified by
+ * a sequence number. The locations of a cell are chained from the oldest to the newest one, so a query visits only
+ * the cells around a point and stops at the first location older than its time limit. Locations leave the index in
+ * their order of arrival, which is the order in which the buffer and the history drop them. The index holds at most
+ * its maximum size: the oldest location leaves it when a new one is added to a full index, older locations are then
+ * only in the history.
+ * Cells are geohashes of CELL_PRECISION characters, about 150 m wide at the equator.
+ * Only used from the location thread.
+ */
+public class LocationCellIndex {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    public static final int CELL_PRECISION = 7;
+    /* a geohash character encodes 5 bits, longitude takes the extra bit of an odd number of bits */
+    private static final int LONGITUDE_BITS = (CELL_PRECISION * 5 + 1) / 2;
+    private static final int LATITUDE_BITS = CELL_PRECISION * 5 / 2;
+    private static final double CELL_HEIGHT = 180.0 / (1 << LATITUDE_BITS);
+    private static final double CELL_WIDTH = 360.0 / (1 << LONGITUDE_BITS);
+    private static final double METERS_PER_DEGREE = Math.toRadians(Geodesy.EARTH_RADIUS);
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NONE = -1;
+
+    /* columns indexed by sequence number modulo the capacity, a power of two */
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private float[] mAccuracies;
+    private long[] mTimes;
+    private boolean[] mMocks;
+    private long[] mCells;
+    /* sequence number of the next location of the same cell, NONE for the newest one */
+    private long[] mNext;
+    /* sequence number of the previous location of the same cell, NONE for the oldest one */
+    private long[] mPrevious;
+    private int mMask;
+    /* sequence numbers of the oldest location and of the next added one */
+    private long mFirst = 0;
+    private long mEnd = 0;
+    private int mMaxSize = Integer.MAX_VALUE;
+    /* sequence number of the newest location of each non empty cell */
+    private final CellMap mNewestByCell = new CellMap(INITIAL_CAPACITY);
+
+    public LocationCellIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return (int) (mEnd - mFirst);
+    }
+
+    public int getCellCount() {
+        return mNewestByCell.size();
+    }
+
+    /**
+     * Bound the number of indexed locations, the oldest ones are removed if the index holds more.
+     */
+    public void setMaxSize(int maxSize) {
+        mMaxSize = Math.max(maxSize, 1);
+        while (size() > mMaxSize) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * @return time of the oldest location, the index must not be empty
+     */
+    public long getOldestTime() {
+        return mTimes[(int) mFirst & mMask];
+    }
+
+    /**
+     * @return time of the newest location, the index must not be empty
+     */
+    public long getNewestTime() {
+        return mTimes[(int) (mEnd - 1) & mMask];
+    }
+
+    public void clear() {
+        mFirst = 0;
+        mEnd = 0;
+        mNewestByCell.clear();
+    }
+
+    /**
+     * Add a location as the newest one of the index.
+     */
+    public void add(double latitude, double longitude, float accuracy, long time, boolean mock) {
+        if (size() >= mMaxSize) {
+            removeOldest();
+        } else if (size() == mMask + 1) {
+            grow();
+        }
+        long sequence = mEnd++;
+        int slot = (int) sequence & mMask;
+        long cellKey = cellKey(latitudeCell(latitude), longitudeCell(longitude));
+        mLatitudes[slot] = latitude;
+        mLongitudes[slot] = longitude;
+        mAccuracies[slot] = accuracy;
+        mTimes[slot] = time;
+        mMocks[slot] = mock;
+        mCells[slot] = cellKey;
+        mNext[slot] = NONE;
+        long newest = mNewestByCell.put(cellKey, sequence);
+        mPrevious[slot] = newest;
+        if (newest != NONE) {
+            mNext[(int) newest & mMask] = sequence;
+        }
+    }
+
+    /**
+     * Remove the oldest locations while the index holds more than `minSize` locations and the oldest one is older
+     * than `minTime`.
+     * @param minSize number of newest locations always kept
+     * @param minTime time in milliseconds, older locations may be removed; Long.MAX_VALUE keeps only `minSize`
+     *                locations
+     */
+    public void trim(int minSize, long minTime) {
+        while (size() > minSize && mTimes[(int) mFirst & mMask] < minTime) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        int slot = (int) mFirst & mMask;
+        long cellKey = mCells[slot];
+        long next = mNext[slot];
+        if (next == NONE) {
+            mNewestByCell.remove(cellKey);
+        } else {
+            mPrevious[(int) next & mMask] = NONE;
+        }
+        mFirst++;
+    }
+
+    /**
+     * Find the locations computed since a date within a distance of a point, ordered from the oldest to the newest.
+     * @param radius distance in meters
+     * @param since time in milliseconds, inclusive
+     * @return slots of the locations, read with the getters
+     */
+    public int[] findNear(double latitude, double longitude, double radius, long since) {
+        radius = Math.max(radius, 0);
+        double latitudeReach = radius / METERS_PER_DEGREE;
+        double cosLatitude = Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + latitudeReach, 90)));
+        double longitudeReach = cosLatitude > 0 ? latitudeReach / cosLatitude : 180;
+        int minLatitudeCell = latitudeCell(latitude - latitudeReach);
+        int maxLatitudeCell = latitudeCell(latitude + latitudeReach);
+        int minLongitudeCell = longitudeCell(longitude - Math.min(longitudeReach, 180));
+        int longitudeCells = (int) Math.min(Math.ceil(2 * longitudeReach / CELL_WIDTH) + 1, 1 << LONGITUDE_BITS);
+
+        long[] found = new long[16];
+        int count = 0;
+        for (int i = minLatitudeCell; i <= maxLatitudeCell; i++) {
+            for (int j = 0; j < longitudeCells; j++) {
+                /* longitude cells wrap around the antimeridian */
+                int longitudeCell = (minLongitudeCell + j) & ((1 << LONGITUDE_BITS) - 1);
+                long newest = mNewestByCell.get(cellKey(i, longitudeCell));
+                for (long sequence = newest; sequence != NONE; sequence = mPrevious[(int) sequence & mMask]) {
+                    int slot = (int) sequence & mMask;
+                    if (mTimes[slot] < since) {
+                        break;
+                    }
+                    if (Geodesy.haversine(latitude, longitude, mLatitudes[slot], mLongitudes[slot]) <= radius) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, 2 * count);
+                        }
+                        found[count++] = sequence;
+                    }
+                }
+            }
+        }
+        /* sequence numbers follow the order of arrival */
+        Arrays.sort(found, 0, count);
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = (int) found[i] & mMask;
+        }
+        return slots;
+    }
+
+    /**
+     * Get the geohashes of the cells visited since a date.
+     * Each cell is checked with its newest location only, so the cost depends on the number of cells.
+     * @param since time in milliseconds, inclusive
+     * @return geohashes of the cells, in no particular order
+     */
+    public List<String> getVisitedCells(long since) {
+        List<String> cells = new ArrayList<>();
+        for (int i = 0; i < mNewestByCell.capacity(); i++) {
+            long cellKey = mNewestByCell.keyAt(i);
+            if (cellKey != CellMap.EMPTY && mTimes[(int) mNewestByCell.valueAt(i) & mMask] >= since) {
+                cells.add(toGeohash(cellKey));
+            }
+        }
+        return cells;
+    }
+
+    public double[] getLatitudes() {
+        return mLatitudes;
+    }
+
+    public double[] getLongitudes() {
+        return mLongitudes;
+    }
+
+    public float[] getAccuracies() {
+        return mAccuracies;
+    }
+
+    public long[] getTimes() {
+        return mTimes;
+    }
+
+    public boolean[] getMocks() {
+        return mMocks;
+    }
+
+    /**
+     * @return geohash of CELL_PRECISION characters of the cell containing a point
+     */
+    public static String geohash(double latitude, double longitude) {
+        return toGeohash(cellKey(latitudeCell(latitude), longitudeCell(longitude)));
+    }
+
+    private void grow() {
+        double[] latitudes = mLatitudes;
+        double[] longitudes = mLongitudes;
+        float[] accuracies = mAccuracies;
+        long[] times = mTimes;
+        boolean[] mocks = mMocks;
+        long[] cells = mCells;
+        long[] next = mNext;
+        long[] previous = mPrevious;
+        int mask = mMask;
+        allocate(2 * (mask + 1));
+        /* links are sequence numbers, they stay valid when the slots move */
+        for (long sequence = mFirst; sequence < mEnd; sequence++) {
+            int from = (int) sequence & mask;
+            int to = (int) sequence & mMask;
+            mLatitudes[to] = latitudes[from];
+            mLongitudes[to] = longitudes[from];
+            mAccuracies[to] = accuracies[from];
+            mTimes[to] = times[from];
+            mMocks[to] = mocks[from];
+            mCells[to] = cells[from];
+            mNext[to] = next[from];
+            mPrevious[to] = previous[from];
+        }
+    }
+
+    private void allocate(int capacity) {
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mAccuracies = new float[capacity];
+        mTimes = new long[capacity];
+        mMocks = new boolean[capacity];
+        mCells = new long[capacity];
+        mNext = new long[capacity];
+        mPrevious = new long[capacity];
+        mMask = capacity - 1;
+    }
+
+    private static int latitudeCell(double latitude) {
+        int cell = (int) Math.floor((latitude + 90) / CELL_HEIGHT);
+        return Math.max(0, Math.min(cell, (1 << LATITUDE_BITS) - 1));
+    }
+
+    private static int longitudeCell(double longitude) {
+        int cell = (int) Math.floor((longitude + 180) / CELL_WIDTH);
+        return cell & ((1 << LONGITUDE_BITS) - 1);
+    }
+
+    /**
+     * Interleave the bits of the cell coordinates as in a geohash, the longitude bit first.
+     */
+    private static long cellKey(int latitudeCell, int longitudeCell) {
+        long key = 0;
+        int latitudeBit = LATITUDE_BITS;
+        int longitudeBit = LONGITUDE_BITS;
+        for (int i = 0; i < CELL_PRECISION * 5; i++) {
+            if (i % 2 == 0) {
+                key = (key << 1) | ((longitudeCell >> --longitudeBit) & 1);
+            } else {
+                key = (key << 1) | ((latitudeCell >> --latitudeBit) & 1);
+            }
+        }
+        return key;
+    }
+
+    private static String toGeohash(long key) {
+        char[] geohash = new char[CELL_PRECISION];
+        for (int i = CELL_PRECISION - 1; i >= 0; i--) {
+            geohash[i] = BASE32.charAt((int) (key & 31));
+            key >>>= 5;
+        }
+        return new String(geohash);
+    }
+
+    /**
+     * Open addressing map from a cell key to a sequence number with linear probing, so neither the keys nor the
+     * values are boxed. Cell keys are never negative, EMPTY marks a free slot.
+     */
+    private static final class CellMap {
+        static final long EMPTY = -1;
+
+        private long[] mKeys;
+        private long[] mValues;
+        private int mSize = 0;
+
+        CellMap(int capacity) {
+            allocate(capacity);
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int capacity() {
+            return mKeys.length;
+        }
+
+        long keyAt(int slot) {
+            return mKeys[slot];
+        }
+
+        long valueAt(int slot) {
+            return mValues[slot];
+        }
+
+        void clear() {
+            Arrays.fill(mKeys, EMPTY);
+            mSize = 0;
+        }
+
+        /**
+         * @return value of the key, NONE if it is absent
+         */
+        long get(long key) {
+            int mask = mKeys.length - 1;
+            for (int slot = home(key, mask); ; slot = (slot + 1) & mask) {
+                if (mKeys[slot] == key) {
+                    return mValues[slot];
+                }
+                if (mKeys[slot] == EMPTY) {
+                    return NONE;
+                }
+            }
+        }
+
+        /**
+         * @return previous value of the key, NONE if it was absent
+         */
+        long put(long key, long value) {
+            /* keep the load factor below one half, so the probe sequences stay short */
+            if (2 * (mSize + 1) > mKeys.length) {
+                grow();
+            }
+            int mask = mKeys.length - 1;
+            for (int slot = home(key, mask); ; slot = (slot + 1) & mask) {
+                if (mKeys[slot] == key) {
+                    long previous = mValues[slot];
+                    mValues[slot] = value;
+                    return previous;
+                }
+                if (mKeys[slot] == EMPTY) {
+                    mKeys[slot] = key;
+                    mValues[slot] = value;
+                    mSize++;
+                    return NONE;
+                }
+            }
+        }
+
+        void remove(long key) {
+            int mask = mKeys.length - 1;
+            int free = home(key, mask);
+            while (mKeys[free] != key) {
+                if (mKeys[free] == EMPTY) {
+                    return;
+                }
+                free = (free + 1) & mask;
+            }
+            /* move back the next keys of the probe sequence which can not be reached anymore past the free slot */
+            for (int slot = (free + 1) & mask; mKeys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (((slot - home(mKeys[slot], mask)) & mask) >= ((slot - free) & mask)) {
+                    mKeys[free] = mKeys[slot];
+                    mValues[free] = mValues[slot];
+                    free = slot;
+                }
+            }
+            mKeys[free] = EMPTY;
+            mSize--;
+        }
+
+        private void grow() {
+            long[] keys = mKeys;
+            long[] values = mValues;
+            allocate(2 * keys.length);
+            int mask = mKeys.length - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) {
+                    continue;
+                }
+                int slot = home(keys[i], mask);
+                while (mKeys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                mKeys[slot] = keys[i];
+                mValues[slot] = values[i];
+            }
+        }
+
+        private void allocate(int capacity) {
+            mKeys = new long[capacity];
+            mValues = new long[capacity];
+            Arrays.fill(mKeys, EMPTY);
+        }
+
+        /**
+         * Spread the interleaved bits of the cell keys, neighbor cells share their high bits.
+         */
+        private static int home(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
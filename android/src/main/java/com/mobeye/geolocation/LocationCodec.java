@@ -0,0 +1,243 @@
+package com.mobeye.geolocation;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact columnar encoding of a track, for bulk exports.
+ * An encoded track is:
+ * - a header: the FORMAT_VERSION byte and the number of locations as a varint;
+ * - the latitude column, then the longitude column: coordinates quantized to 1e-7 degree (about 1 cm), each one
+ *   written as the zig-zag varint of its difference with the previous location;
+ * - the time column: milliseconds, as zig-zag varints of the difference with the previous location;
+ * - the accuracy column: varints of the accuracy rounded to the decimeter;
+ * - the flags column: one byte per location packing the mock state and the provider, as in LocationRecord.
+ * Consecutive locations are close in space and time, so a location takes about 10 bytes instead of the 33 bytes of a
+ * LocationRecord. Values of a column are grouped, which also helps a general purpose compression of the export.
+ */
+public final class LocationCodec {
+    public static final int FORMAT_VERSION = 1;
+    private static final double E7 = 1e7;
+
+    private LocationCodec() {}
+
+    /**
+     * Encode the locations [from, to[ of the columns.
+     * @return the encoded track
+     */
+    public static byte[] encode(double[] latitudes, double[] longitudes, float[] accuracies, long[] times,
+                                boolean[] mocks, String[] providers, int from, int to) {
+        Encoder encoder = new Encoder(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            encoder.read(latitudes[i], longitudes[i], accuracies[i], times[i], mocks[i],
+                    providers != null ? providers[i] : null);
+        }
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Decode a track encoded by encode.
+     * @param reader called for each location, from the first to the last encoded one
+     * @return number of decoded locations
+     * @throws IOException if the bytes are not a complete track of a known version
+     */
+    public static int decode(byte[] bytes, LocationHistory.RecordReader reader) throws IOException {
+        Reader input = new Reader(bytes);
+        int version = input.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown track version " + version);
+        }
+        long count = input.readVarint();
+        /* each location takes at least 5 bytes, a larger count is a corrupted header */
+        if (count < 0 || count > bytes.length / 5) {
+            throw new IOException("Invalid location count " + count);
+        }
+        int size = (int) count;
+        long[] latitudes = readDeltaColumn(input, size);
+        long[] longitudes = readDeltaColumn(input, size);
+        long[] times = readDeltaColumn(input, size);
+        long[] accuracies = new long[size];
+        for (int i = 0; i < size; i++) {
+            accuracies[i] = input.readVarint();
+        }
+        for (int i = 0; i < size; i++) {
+            byte flags = (byte) input.readByte();
+            reader.read(latitudes[i] / E7, longitudes[i] / E7, accuracies[i] / 10f, times[i],
+                    LocationRecord.isFromMockProvider(flags), LocationRecord.getProvider(flags));
+        }
+        return size;
+    }
+
+    private static long[] readDeltaColumn(Reader input, int size) throws IOException {
+        long[] values = new long[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += unZigZag(input.readVarint());
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static long quantize(double degrees) {
+        return Math.round(degrees * E7);
+    }
+
+    /**
+     * Map signed values to unsigned ones, so small negative differences also take few bytes.
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Incremental encoder, fed with the locations from the oldest to the newest one, for example by
+     * LocationHistory.getLocationsBetween.
+     * Each column is encoded as the locations come, so a track is encoded without holding its locations.
+     */
+    public static final class Encoder implements LocationHistory.RecordReader {
+        private final Writer mLatitudes;
+        private final Writer mLongitudes;
+        private final Writer mTimes;
+        private final Writer mAccuracies;
+        private final Writer mFlags;
+        private long mPreviousLatitude = 0;
+        private long mPreviousLongitude = 0;
+        private long mPreviousTime = 0;
+        private int mCount = 0;
+
+        public Encoder() {
+            this(64);
+        }
+
+        /**
+         * @param capacity expected number of locations
+         */
+        public Encoder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            /* usual number of bytes of a location in each column, the writers grow otherwise */
+            mLatitudes = new Writer(3 * capacity);
+            mLongitudes = new Writer(3 * capacity);
+            mTimes = new Writer(2 * capacity);
+            mAccuracies = new Writer(2 * capacity);
+            mFlags = new Writer(capacity);
+        }
+
+        @Override
+        public void read(double latitude, double longitude, float accuracy, long time, boolean mock,
+                         String provider) {
+            long value = quantize(latitude);
+            mLatitudes.writeVarint(zigZag(value - mPreviousLatitude));
+            mPreviousLatitude = value;
+            value = quantize(longitude);
+            mLongitudes.writeVarint(zigZag(value - mPreviousLongitude));
+            mPreviousLongitude = value;
+            mTimes.writeVarint(zigZag(time - mPreviousTime));
+            mPreviousTime = time;
+            /* NaN is rounded to 0 */
+            mAccuracies.writeVarint(Math.max(Math.round(accuracy * 10.0), 0));
+            mFlags.writeByte(LocationRecord.encodeFlags(mock, provider));
+            mCount++;
+        }
+
+        /**
+         * @return number of encoded locations
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return the encoded track of the locations read so far
+         */
+        public byte[] toByteArray() {
+            Writer writer = new Writer(16 + mLatitudes.size() + mLongitudes.size() + mTimes.size()
+                    + mAccuracies.size() + mFlags.size());
+            writer.writeByte(FORMAT_VERSION);
+            writer.writeVarint(mCount);
+            writer.write(mLatitudes);
+            writer.write(mLongitudes);
+            writer.write(mTimes);
+            writer.write(mAccuracies);
+            writer.write(mFlags);
+            return writer.toByteArray();
+        }
+    }
+
+    /**
+     * Growing byte array, without the synchronization of ByteArrayOutputStream.
+     */
+    private static class Writer {
+        private byte[] mBytes;
+        private int mSize = 0;
+
+        Writer(int capacity) {
+            mBytes = new byte[capacity];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        void writeByte(int value) {
+            if (mSize == mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, 2 * mBytes.length);
+            }
+            mBytes[mSize++] = (byte) value;
+        }
+
+        void write(Writer other) {
+            if (mSize + other.mSize > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(2 * mBytes.length, mSize + other.mSize));
+            }
+            System.arraycopy(other.mBytes, 0, mBytes, mSize, other.mSize);
+            mSize += other.mSize;
+        }
+
+        /**
+         * Write 7 bits per byte, from the lowest ones, the high bit tells if another byte follows.
+         */
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBytes, mSize);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] mBytes;
+        private int mPosition = 0;
+
+        Reader(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        int readByte() throws IOException {
+            if (mPosition == mBytes.length) {
+                throw new IOException("Truncated track");
+            }
+            return mBytes[mPosition++] & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
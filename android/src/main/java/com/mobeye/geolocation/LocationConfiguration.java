@@ -1,11 +1,125 @@
 package com.mobeye.geolocation;
 
-import com.google.gson.annotations.Expose;
-import com.google.gson.annotations.SerializedName;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
 
 public class LocationConfiguration {
     public LocationConfiguration(){}
 
+    /**
+     * Read and validate the configuration sent by JS.
+     * Fields are read directly from the map, without any intermediate object. A missing field takes the default value
+     * of src/defaultConfiguration.ts, except the desired accuracy and the buffer size which are required.
+     * @param map configuration sent by JS
+     * @return the configuration
+     * @throws InvalidConfigurationException if a field has a wrong type or is out of range
+     */
+    public static LocationConfiguration fromReadableMap(ReadableMap map) throws InvalidConfigurationException {
+        LocationConfiguration configuration = new LocationConfiguration();
+        if (!map.hasKey("desiredAccuracy") || map.getType("desiredAccuracy") != ReadableType.String) {
+            throw new InvalidConfigurationException(GeolocationError.INVALID_ACCURACY_LEVEL, "desiredAccuracy");
+        }
+        configuration.desiredAccuracy = LevelAccuracy.fromValue(map.getString("desiredAccuracy"));
+        if (configuration.desiredAccuracy == null) {
+            throw new InvalidConfigurationException(GeolocationError.INVALID_ACCURACY_LEVEL, "desiredAccuracy");
+        }
+        if (!map.hasKey("bufferSize") || map.isNull("bufferSize")) {
+            throw new InvalidConfigurationException(GeolocationError.INVALID_BUFFER_SIZE, "bufferSize");
+        }
+        configuration.bufferSize = readInt(map, "bufferSize", 1, 1, GeolocationError.INVALID_BUFFER_SIZE);
+        configuration.distanceFilter = readInt(map, "distanceFilter", 0, 500,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.updateInterval = readInt(map, "updateInterval", 0, 5000,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.maxWaitTime = readInt(map, "maxWaitTime", 0, 0, GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.maxBatchSize = readInt(map, "maxBatchSize", 0, 0, GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.minEmitInterval = readInt(map, "minEmitInterval", 0, 0,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.minEmitDistance = readInt(map, "minEmitDistance", 0, 0,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.significantDistance = readInt(map, "significantDistance", 0, 100,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.significantInterval = readInt(map, "significantInterval", 0, 0,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.accuracyWeighted = readBoolean(map, "accuracyWeighted");
+        configuration.historyEnabled = readBoolean(map, "historyEnabled");
+        /* a retention of 0 day would drop the history as soon as it is written */
+        configuration.historyRetentionDays = readInt(map, "historyRetentionDays",
+                configuration.historyEnabled ? 1 : 0, 7, GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.smoothingEnabled = readBoolean(map, "smoothingEnabled");
+        configuration.smoothingProcessNoise = readDouble(map, "smoothingProcessNoise", 3,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        /* the Kalman filter needs a process noise to follow the moves */
+        if (configuration.smoothingEnabled && configuration.smoothingProcessNoise <= 0) {
+            throw new InvalidConfigurationException(GeolocationError.INVALID_CONFIGURATION_VALUE,
+                    "smoothingProcessNoise");
+        }
+        configuration.maxAccuracy = readInt(map, "maxAccuracy", 0, 0, GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.maxSpeed = readInt(map, "maxSpeed", 0, 0, GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.maxLocationAge = readInt(map, "maxLocationAge", 0, 0,
+                GeolocationError.INVALID_CONFIGURATION_VALUE);
+        configuration.rejectMockLocations = readBoolean(map, "rejectMockLocations");
+        configuration.adaptiveSamplingEnabled = readBoolean(map, "adaptiveSamplingEnabled");
+        configuration.diagnosticsEnabled = readBoolean(map, "diagnosticsEnabled");
+        return configuration;
+    }
+
+    /**
+     * Read an optional integer field, JS numbers are doubles and must have an integer value.
+     * @param min minimum value of the field
+     * @param defaultValue value of a missing field
+     * @return the value
+     */
+    private static int readInt(ReadableMap map, String field, int min, int defaultValue, GeolocationError error)
+            throws InvalidConfigurationException {
+        if (!map.hasKey(field) || map.isNull(field)) {
+            return defaultValue;
+        }
+        if (map.getType(field) != ReadableType.Number) {
+            throw new InvalidConfigurationException(error, field);
+        }
+        double value = map.getDouble(field);
+        if (value != Math.rint(value) || value < min || value > Integer.MAX_VALUE) {
+            throw new InvalidConfigurationException(error, field);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read an optional non-negative number field.
+     * @param defaultValue value of a missing field
+     * @return the value
+     */
+    private static double readDouble(ReadableMap map, String field, double defaultValue, GeolocationError error)
+            throws InvalidConfigurationException {
+        if (!map.hasKey(field) || map.isNull(field)) {
+            return defaultValue;
+        }
+        if (map.getType(field) != ReadableType.Number) {
+            throw new InvalidConfigurationException(error, field);
+        }
+        double value = map.getDouble(field);
+        /* NaN fails the comparison */
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new InvalidConfigurationException(error, field);
+        }
+        return value;
+    }
+
+    /**
+     * Read an optional boolean field.
+     * @return the value, false if the field is missing
+     */
+    private static boolean readBoolean(ReadableMap map, String field) throws InvalidConfigurationException {
+        if (!map.hasKey(field) || map.isNull(field)) {
+            return false;
+        }
+        if (map.getType(field) != ReadableType.Boolean) {
+            throw new InvalidConfigurationException(GeolocationError.INVALID_CONFIGURATION_VALUE, field);
+        }
+        return map.getBoolean(field);
+    }
+
     public LevelAccuracy getDesiredAccuracy() {
         return desiredAccuracy;
     }
@@ -22,16 +136,93 @@ public class LocationConfiguration {
         return bufferSize;
     }
 
-    @SerializedName("desiredAccuracy")
-    @Expose
+    public int getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMinEmitInterval() {
+        return minEmitInterval;
+    }
+
+    public int getMinEmitDistance() {
+        return minEmitDistance;
+    }
+
+    public int getSignificantDistance() {
+        return significantDistance;
+    }
+
+    public int getSignificantInterval() {
+        return significantInterval;
+    }
+
+    public boolean isAccuracyWeighted() {
+        return accuracyWeighted;
+    }
+
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+
+    public int getHistoryRetentionDays() {
+        return historyRetentionDays;
+    }
+
+    public boolean isSmoothingEnabled() {
+        return smoothingEnabled;
+    }
+
+    public double getSmoothingProcessNoise() {
+        return smoothingProcessNoise;
+    }
+
+    public int getMaxAccuracy() {
+        return maxAccuracy;
+    }
+
+    public int getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public int getMaxLocationAge() {
+        return maxLocationAge;
+    }
+
+    public boolean isRejectMockLocations() {
+        return rejectMockLocations;
+    }
+
+    public boolean isAdaptiveSamplingEnabled() {
+        return adaptiveSamplingEnabled;
+    }
+
+    public boolean isDiagnosticsEnabled() {
+        return diagnosticsEnabled;
+    }
+
     private LevelAccuracy desiredAccuracy;
-    @SerializedName("distanceFilter")
-    @Expose
     private int distanceFilter;
-    @SerializedName("updateInterval")
-    @Expose
     private int updateInterval;
-    @SerializedName("bufferSize")
-    @Expose
     private int bufferSize;
+    private int maxWaitTime;
+    private int maxBatchSize;
+    private int minEmitInterval;
+    private int minEmitDistance;
+    private int significantDistance;
+    private int significantInterval;
+    private boolean accuracyWeighted;
+    private boolean historyEnabled;
+    private int historyRetentionDays;
+    private boolean smoothingEnabled;
+    private double smoothingProcessNoise;
+    private int maxAccuracy;
+    private int maxSpeed;
+    private int maxLocationAge;
+    private boolean rejectMockLocations;
+    private boolean adaptiveSamplingEnabled;
+    private boolean diagnosticsEnabled;
 }
@@ -0,0 +1,20 @@
+package com.mobeye.geolocation;
+
+import android.location.Location;
+
+/**
+ * Filter deciding if a location delivered by the provider is buffered, see LocationFilterChain.
+ */
+public interface LocationFilter {
+    /**
+     * @return name of the filter, used for the rejection counters
+     */
+    String getName();
+
+    /**
+     * @param location location delivered by the provider
+     * @param previous last accepted location, null if there is none
+     * @return true if the location is accepted
+     */
+    boolean accept(Location location, Location previous);
+}
@@ -0,0 +1,215 @@
+package com.mobeye.geolocation;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Chain of filters applied to the locations delivered by the provider before they are buffered.
+ * A location is buffered only if every filter accepts it; the first rejecting filter counts the rejection.
+ * The filters of the configuration run first, then the ones added by the app, which the configuration does not change.
+ * The chain keeps the last accepted location so filters can compare consecutive fixes.
+ * Methods are synchronized: the configuration is changed from the JS thread while locations arrive on the location
+ * thread.
+ */
+public class LocationFilterChain {
+    /* filters of the configuration */
+    private final List<LocationFilter> mFilters = new ArrayList<>();
+    /* filters added by the app, possibly shared with other chains */
+    private final List<LocationFilter> mAddedFilters;
+    private final Map<String, Long> mRejectedCounts = new LinkedHashMap<>();
+    private Location mPrevious;
+
+    public LocationFilterChain() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * @param addedFilters filters added by the app, a thread safe list which may be modified at any time
+     */
+    public LocationFilterChain(List<LocationFilter> addedFilters) {
+        mAddedFilters = addedFilters;
+    }
+
+    /**
+     * Replace the filters of the configuration by the enabled ones, the added filters are kept.
+     * Out of order locations are always rejected, the other filters are disabled by a value of 0 or false.
+     */
+    public void configure(LocationConfiguration configuration) {
+        configure(configuration.getMaxLocationAge(), configuration.isRejectMockLocations(),
+                configuration.getMaxAccuracy(), configuration.getMaxSpeed());
+    }
+
+    /**
+     * Replace the filters of the configuration by the enabled ones, the added filters are kept.
+     * @param maxLocationAge maximum age in milliseconds, 0 to disable
+     * @param rejectMockLocations reject the locations of a mock provider
+     * @param maxAccuracy maximum accuracy radius in meters, 0 to disable
+     * @param maxSpeed maximum speed in m/s, 0 to disable
+     */
+    public synchronized void configure(int maxLocationAge, boolean rejectMockLocations, int maxAccuracy,
+                                       int maxSpeed) {
+        mFilters.clear();
+        mFilters.add(new StaleFilter(maxLocationAge));
+        if (rejectMockLocations) {
+            mFilters.add(new MockFilter());
+        }
+        if (maxAccuracy > 0) {
+            mFilters.add(new AccuracyFilter(maxAccuracy));
+        }
+        if (maxSpeed > 0) {
+            mFilters.add(new SpeedFilter(maxSpeed));
+        }
+    }
+
+    /**
+     * Add a filter at the end of the chain, it is kept when the chain is configured.
+     */
+    public void add(LocationFilter filter) {
+        mAddedFilters.add(filter);
+    }
+
+    /**
+     * Remove a filter added with add.
+     */
+    public void remove(LocationFilter filter) {
+        mAddedFilters.remove(filter);
+    }
+
+    /**
+     * @return true if the location passes every filter, it then becomes the previous location of the next call
+     */
+    public synchronized boolean accept(Location location) {
+        for (int i = 0; i < mFilters.size(); i++) {
+            if (!apply(mFilters.get(i), location)) {
+                return false;
+            }
+        }
+        for (LocationFilter filter : mAddedFilters) {
+            if (!apply(filter, location)) {
+                return false;
+            }
+        }
+        mPrevious = location;
+        return true;
+    }
+
+    private boolean apply(LocationFilter filter, Location location) {
+        if (filter.accept(location, mPrevious)) {
+            return true;
+        }
+        Long count = mRejectedCounts.get(filter.getName());
+        mRejectedCounts.put(filter.getName(), count == null ? 1 : count + 1);
+        return false;
+    }
+
+    /**
+     * @return number of rejected locations by filter name, since the module creation
+     */
+    public synchronized Map<String, Long> getRejectedCounts() {
+        return new LinkedHashMap<>(mRejectedCounts);
+    }
+
+    /**
+     * Reject the locations older than the last accepted one, and the ones older than a maximum age.
+     */
+    static class StaleFilter implements LocationFilter {
+        private final long mMaxAge;
+
+        /**
+         * @param maxAge maximum age in milliseconds, 0 to disable
+         */
+        StaleFilter(long maxAge) {
+            mMaxAge = maxAge;
+        }
+
+        @Override
+        public String getName() {
+            return "stale";
+        }
+
+        @Override
+        public boolean accept(Location location, Location previous) {
+            if (previous != null && location.getTime() <= previous.getTime()) {
+                return false;
+            }
+            return mMaxAge <= 0 || System.currentTimeMillis() - location.getTime() <= mMaxAge;
+        }
+    }
+
+    /**
+     * Reject the locations of a mock provider.
+     */
+    static class MockFilter implements LocationFilter {
+        @Override
+        public String getName() {
+            return "mock";
+        }
+
+        @Override
+        public boolean accept(Location location, Location previous) {
+            return !location.isFromMockProvider();
+        }
+    }
+
+    /**
+     * Reject the locations less accurate than a maximum accuracy radius.
+     */
+    static class AccuracyFilter implements LocationFilter {
+        private final float mMaxAccuracy;
+
+        /**
+         * @param maxAccuracy maximum accuracy radius in meters
+         */
+        AccuracyFilter(float maxAccuracy) {
+            mMaxAccuracy = maxAccuracy;
+        }
+
+        @Override
+        public String getName() {
+            return "accuracy";
+        }
+
+        @Override
+        public boolean accept(Location location, Location previous) {
+            return location.getAccuracy() <= mMaxAccuracy;
+        }
+    }
+
+    /**
+     * Reject the locations implying a speed above a maximum from the previous location.
+     * The accuracy radii of both locations are subtracted from the distance, so an inaccurate accepted location
+     * can not lock the filter out of the next good ones.
+     */
+    static class SpeedFilter implements LocationFilter {
+        private final double mMaxSpeed;
+
+        /**
+         * @param maxSpeed maximum speed in m/s
+         */
+        SpeedFilter(double maxSpeed) {
+            mMaxSpeed = maxSpeed;
+        }
+
+        @Override
+        public String getName() {
+            return "speed";
+        }
+
+        @Override
+        public boolean accept(Location location, Location previous) {
+            if (previous == null) {
+                return true;
+            }
+            double seconds = (location.getTime() - previous.getTime()) / 1000.0;
+            double distance = Geodesy.haversine(previous.getLatitude(), previous.getLongitude(),
+                    location.getLatitude(), location.getLongitude())
+                    - previous.getAccuracy() - location.getAccuracy();
+            return distance <= mMaxSpeed * Math.max(seconds, 0);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.mobeye.geolocation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk history of the computed locations, not bounded by the buffer size.
+ * Locations are stored as fixed size records (see LocationRecord) ordered by time, and the file is read through a
+ * read-only MappedByteBuffer: a time range query is a binary search on the time column, only the matching records
+ * are decoded. The file is extended by MAPPING_CHUNK_RECORDS records at a time, so the mapping is only replaced when
+ * the appends fill it, and is trimmed to the stored records when the history is closed.
+ * Locations older than the retention are dropped when the history is opened and every RETENTION_CHECK_PERIOD appends.
+ * Methods are synchronized: the location thread appends while the native modules thread queries. A query only holds
+ * the lock to take the mapping of the current records, they are decoded without blocking the appends.
+ */
+public class LocationHistory {
+    private static final int RETENTION_CHECK_PERIOD = 1000;
+    static final int MAPPING_CHUNK_RECORDS = 4096;
+
+    private final File mFile;
+    private final long mRetention;
+    private final CRC32 mChecksum = new CRC32();
+    private final ByteBuffer mRecord = ByteBuffer.allocate(LocationRecord.RECORD_SIZE);
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mMappedRecords;
+    private int mRecordCount = 0;
+    private long mLastTime = Long.MIN_VALUE;
+    private int mAppendsSinceRetentionCheck = 0;
+
+    /**
+     * @param file history file
+     * @param retention duration in milliseconds during which locations are kept
+     */
+    public LocationHistory(File file, long retention) {
+        mFile = file;
+        mRetention = retention;
+    }
+
+    /**
+     * Open the history file, drop a torn or corrupted tail and the locations older than the retention.
+     * @throws IOException if the history can not be opened
+     */
+    public synchronized void open() throws IOException {
+        if (mChannel != null) {
+            return;
+        }
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can not create " + parent);
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        recoverTail();
+        applyRetention(System.currentTimeMillis());
+    }
+
+    public synchronized void close() {
+        if (mChannel == null) {
+            return;
+        }
+        try {
+            /* remove the unused end of the mapping, a query still reading it only reads the stored records */
+            mChannel.truncate((long) mRecordCount * LocationRecord.RECORD_SIZE);
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mRandomAccessFile = null;
+        mChannel = null;
+        mMappedRecords = null;
+    }
+
+    public synchronized int size() {
+        return mRecordCount;
+    }
+
+    /**
+     * @return duration in milliseconds during which locations are kept
+     */
+    public long getRetention() {
+        return mRetention;
+    }
+
+    /**
+     * Append a location at the end of the history.
+     * A location older than the last stored one is ignored, the history must stay ordered by time.
+     * @throws IOException if the history can not be written
+     */
+    public synchronized void append(double latitude, double longitude, float accuracy, long time, boolean mock,
+                                    String provider) throws IOException {
+        if (mChannel == null || time < mLastTime) {
+            return;
+        }
+        mRecord.clear();
+        LocationRecord.write(mRecord, mChecksum, latitude, longitude, accuracy, time, mock, provider);
+        mRecord.flip();
+        long position = (long) mRecordCount * LocationRecord.RECORD_SIZE;
+        while (mRecord.hasRemaining()) {
+            position += mChannel.write(mRecord, position);
+        }
+        mRecordCount++;
+        mLastTime = time;
+        if (++mAppendsSinceRetentionCheck >= RETENTION_CHECK_PERIOD) {
+            applyRetention(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Get the locations computed between two dates.
+     * @param start start time in milliseconds, inclusive
+     * @param end end time in milliseconds, inclusive
+     * @param reader reader called for each location, ordered from the oldest to the newest one
+     * @return number of read locations
+     * @throws IOException if the history can not be read
+     */
+    public int getLocationsBetween(long start, long end, RecordReader reader) throws IOException {
+        ByteBuffer records;
+        int recordCount;
+        synchronized (this) {
+            if (mChannel == null || mRecordCount == 0 || end < start) {
+                return 0;
+            }
+            /* the mapped records are never modified: appends write after them, the retention and clear replace the
+            file */
+            records = map();
+            recordCount = mRecordCount;
+        }
+        int first = lowerBound(records, recordCount, start);
+        int count = 0;
+        for (int i = first; i < recordCount; i++) {
+            int offset = i * LocationRecord.RECORD_SIZE;
+            long time = LocationRecord.getTime(records, offset);
+            if (time > end) {
+                break;
+            }
+            reader.read(
+                    LocationRecord.getLatitude(records, offset),
+                    LocationRecord.getLongitude(records, offset),
+                    LocationRecord.getAccuracy(records, offset),
+                    time,
+                    LocationRecord.isFromMockProvider(records, offset),
+                    LocationRecord.getProvider(records, offset));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Remove every location from the history.
+     * @throws IOException if the history can not be written
+     */
+    public synchronized void clear() throws IOException {
+        if (mChannel == null) {
+            return;
+        }
+        /* a new file is created rather than truncated, a query may still read the mapping of the previous one */
+        mMappedRecords = null;
+        mRandomAccessFile.close();
+        boolean deleted = mFile.delete();
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        if (!deleted) {
+            mChannel.truncate(0);
+        }
+        mRecordCount = 0;
+        mLastTime = Long.MIN_VALUE;
+    }
+
+    /**
+     * Map the records in memory, the mapping is kept until the appends go beyond it or the file is replaced.
+     * The mapping may be larger than the records, the readers are bounded by the record count.
+     */
+    private ByteBuffer map() throws IOException {
+        long size = (long) mRecordCount * LocationRecord.RECORD_SIZE;
+        if (mMappedRecords == null || mMappedRecords.capacity() < size) {
+            long chunks = mRecordCount / MAPPING_CHUNK_RECORDS + 1;
+            long mappedSize = chunks * MAPPING_CHUNK_RECORDS * LocationRecord.RECORD_SIZE;
+            /* the region must be in the file, the appends then write in the mapped pages */
+            if (mChannel.size() < mappedSize) {
+                mRandomAccessFile.setLength(mappedSize);
+            }
+            mMappedRecords = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mappedSize);
+        }
+        return mMappedRecords;
+    }
+
+    /**
+     * Binary search of the first record whose time is greater than or equal to the given time.
+     * @param recordCount number of records of the mapping
+     * @return index of the record, or the record count if every record is older
+     */
+    private static int lowerBound(ByteBuffer records, int recordCount, long time) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (LocationRecord.getTime(records, middle * LocationRecord.RECORD_SIZE) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Drop a partial record and the invalid records at the end of the file, including the unused end of the mapping
+     * when the history was not closed.
+     */
+    private void recoverTail() throws IOException {
+        mRecordCount = (int) (mChannel.size() / LocationRecord.RECORD_SIZE);
+        ByteBuffer record = ByteBuffer.allocate(LocationRecord.RECORD_SIZE);
+        while (mRecordCount > 0) {
+            record.clear();
+            long position = (long) (mRecordCount - 1) * LocationRecord.RECORD_SIZE;
+            int read;
+            do {
+                read = mChannel.read(record, position + record.position());
+            } while (read > 0 && record.hasRemaining());
+            record.flip();
+            if (LocationRecord.isValid(record, 0, mChecksum)) {
+                mLastTime = LocationRecord.getTime(record, 0);
+                break;
+            }
+            mRecordCount--;
+        }
+        long validLength = (long) mRecordCount * LocationRecord.RECORD_SIZE;
+        if (mChannel.size() != validLength) {
+            mChannel.truncate(validLength);
+        }
+        if (mRecordCount == 0) {
+            mLastTime = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Remove the locations older than the retention by copying the newest records in a new file.
+     */
+    private void applyRetention(long now) throws IOException {
+        mAppendsSinceRetentionCheck = 0;
+        if (mRecordCount == 0) {
+            return;
+        }
+        int first = lowerBound(map(), mRecordCount, now - mRetention);
+        if (first == 0) {
+            return;
+        }
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        long start = (long) first * LocationRecord.RECORD_SIZE;
+        long length = (long) (mRecordCount - first) * LocationRecord.RECORD_SIZE;
+        try (FileOutputStream output = new FileOutputStream(tmpFile, false)) {
+            FileChannel channel = output.getChannel();
+            long copied = 0;
+            while (copied < length) {
+                copied += mChannel.transferTo(start + copied, length - copied, channel);
+            }
+            output.getFD().sync();
+        }
+        mMappedRecords = null;
+        mRandomAccessFile.close();
+        boolean replaced = tmpFile.renameTo(mFile);
+        /* reopen the file even if the replacement failed, the history stays usable */
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        if (!replaced) {
+            throw new IOException("Can not replace " + mFile);
+        }
+        mRecordCount -= first;
+        if (mRecordCount == 0) {
+            mLastTime = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Reader of the locations returned by a query.
+     */
+    public interface RecordReader {
+        void read(double latitude, double longitude, float accuracy, long time, boolean mock, String provider);
+    }
+}
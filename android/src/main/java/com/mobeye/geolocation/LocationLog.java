@@ -0,0 +1,244 @@
+package com.mobeye.geolocation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of the buffered locations.
+ * Each location is stored as a fixed size record (see LocationRecord), so saving a new location only appends
+ * RECORD_SIZE bytes instead of rewriting the whole buffer.
+ * The log is compacted when it holds more than twice the buffer capacity, and a torn or corrupted tail
+ * (e.g. the app was killed during a write) is dropped when the log is read.
+ * This class is not thread safe, it must be used from a single thread.
+ */
+public class LocationLog {
+    /* number of records read from the disk at once */
+    private static final int READ_CHUNK_RECORDS = 256;
+
+    private final File mFile;
+    private final CRC32 mChecksum = new CRC32();
+    private long mRecordCount = -1;
+
+    public LocationLog(File file) {
+        mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * Number of records stored in the log.
+     */
+    public long getRecordCount() {
+        if (mRecordCount < 0) {
+            mRecordCount = mFile.length() / LocationRecord.RECORD_SIZE;
+        }
+        return mRecordCount;
+    }
+
+    /**
+     * Read every valid record of the log into the buffer, the buffer keeps the newest ones.
+     * The log is truncated after the last valid record.
+     * @param buffer buffer to fill
+     * @return number of records read
+     * @throws IOException if the log can not be read
+     */
+    public int readInto(LocationRingBuffer buffer) throws IOException {
+        return readInto(buffer, true);
+    }
+
+    /**
+     * Read every valid record of the log into the buffer, the buffer keeps the newest ones.
+     * @param buffer buffer to fill
+     * @param repair true to truncate the log after the last valid record, false to open it read-only, for readers
+     *               which do not own the log and may run while its owner appends
+     * @return number of records read
+     * @throws IOException if the log can not be read
+     */
+    public int readInto(LocationRingBuffer buffer, boolean repair) throws IOException {
+        if (!mFile.exists()) {
+            mRecordCount = 0;
+            return 0;
+        }
+        int count = 0;
+        long validLength = 0;
+        try (RandomAccessFile file = new RandomAccessFile(mFile, repair ? "rw" : "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK_RECORDS * LocationRecord.RECORD_SIZE);
+            boolean corrupted = false;
+            while (!corrupted) {
+                chunk.clear();
+                readFully(channel, chunk);
+                chunk.flip();
+                if (chunk.limit() == 0) {
+                    break;
+                }
+                int offset = 0;
+                while (offset + LocationRecord.RECORD_SIZE <= chunk.limit()) {
+                    if (!LocationRecord.isValid(chunk, offset, mChecksum)) {
+                        corrupted = true;
+                        break;
+                    }
+                    buffer.add(
+                            LocationRecord.getLatitude(chunk, offset),
+                            LocationRecord.getLongitude(chunk, offset),
+                            LocationRecord.getAccuracy(chunk, offset),
+                            LocationRecord.getTime(chunk, offset),
+                            LocationRecord.isFromMockProvider(chunk, offset),
+                            LocationRecord.getProvider(chunk, offset));
+                    offset += LocationRecord.RECORD_SIZE;
+                    validLength += LocationRecord.RECORD_SIZE;
+                    count++;
+                }
+                if (chunk.limit() < chunk.capacity()) {
+                    /* end of file reached, a remaining partial record is a torn write */
+                    break;
+                }
+            }
+            if (!repair) {
+                return count;
+            }
+            if (channel.size() != validLength) {
+                channel.truncate(validLength);
+            }
+        }
+        mRecordCount = count;
+        return count;
+    }
+
+    /**
+     * Append the `number` newest locations of the buffer to the log.
+     * @param buffer buffer containing the locations
+     * @param number number of locations to append
+     * @throws IOException if the log can not be written
+     */
+    public void append(LocationRingBuffer buffer, int number) throws IOException {
+        Columns columns = Columns.copyLatest(buffer, number);
+        if (columns.count == 0) {
+            return;
+        }
+        ensureParentExists();
+        /* counted before the write, the length of the file would already include the new records */
+        long recordCount = getRecordCount();
+        ByteBuffer bytes = columns.encode(mChecksum);
+        try (FileOutputStream output = new FileOutputStream(mFile, true)) {
+            FileChannel channel = output.getChannel();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        mRecordCount = recordCount + columns.count;
+    }
+
+    /**
+     * Rewrite the log with the content of the buffer.
+     * The new log is written in a temporary file which replaces the log once it is synced on the disk, so a crash
+     * during the compaction keeps the previous log.
+     * @param buffer buffer containing the locations to keep
+     * @throws IOException if the log can not be written
+     */
+    public void rewrite(LocationRingBuffer buffer) throws IOException {
+        Columns columns = Columns.copyLatest(buffer, buffer.capacity());
+        ensureParentExists();
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        ByteBuffer bytes = columns.encode(mChecksum);
+        try (FileOutputStream output = new FileOutputStream(tmpFile, false)) {
+            FileChannel channel = output.getChannel();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            output.getFD().sync();
+        }
+        if (!tmpFile.renameTo(mFile)) {
+            throw new IOException("Can not replace " + mFile);
+        }
+        mRecordCount = columns.count;
+    }
+
+    /**
+     * Compact the log if it holds more than twice the number of locations the buffer can keep.
+     * @param buffer buffer containing the locations to keep
+     * @return true if the log has been compacted.
+     * @throws IOException if the log can not be written
+     */
+    public boolean compactIfNeeded(LocationRingBuffer buffer) throws IOException {
+        if (getRecordCount() <= 2L * buffer.capacity()) {
+            return false;
+        }
+        rewrite(buffer);
+        return true;
+    }
+
+    /**
+     * Remove every record of the log.
+     * @throws IOException if the log can not be deleted
+     */
+    public void delete() throws IOException {
+        if (mFile.exists() && !mFile.delete()) {
+            throw new IOException("Can not delete " + mFile);
+        }
+        mRecordCount = 0;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer chunk) throws IOException {
+        int read;
+        do {
+            read = channel.read(chunk);
+        } while (read > 0 && chunk.hasRemaining());
+    }
+
+    private void ensureParentExists() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can not create " + parent);
+        }
+    }
+
+    /**
+     * Snapshot of the newest locations of a buffer.
+     */
+    private static class Columns {
+        double[] latitudes;
+        double[] longitudes;
+        float[] accuracies;
+        long[] times;
+        boolean[] mocks;
+        String[] providers;
+        int count;
+
+        static Columns copyLatest(LocationRingBuffer buffer, int number) {
+            Columns columns = new Columns();
+            /* the capacity bounds the size even if the buffer is written concurrently */
+            int size = Math.max(0, Math.min(number, buffer.capacity()));
+            columns.latitudes = new double[size];
+            columns.longitudes = new double[size];
+            columns.accuracies = new float[size];
+            columns.times = new long[size];
+            columns.mocks = new boolean[size];
+            columns.providers = new String[size];
+            columns.count = buffer.copyLatest(size, columns.latitudes, columns.longitudes, columns.accuracies,
+                    columns.times, columns.mocks, columns.providers);
+            return columns;
+        }
+
+        ByteBuffer encode(CRC32 checksum) {
+            ByteBuffer bytes = ByteBuffer.allocate(count * LocationRecord.RECORD_SIZE);
+            for (int i = 0; i < count; i++) {
+                LocationRecord.write(bytes, checksum, latitudes[i], longitudes[i], accuracies[i], times[i],
+                        mocks[i], providers[i]);
+            }
+            bytes.flip();
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.mobeye.geolocation;
+
+import android.location.LocationManager;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of a stored location.
+ * A record has a fixed size of 33 bytes:
+ * latitude (double), longitude (double), accuracy (float), time (long), flags (byte) and a CRC32 (int) of the
+ * 29 previous bytes. The flags byte packs the mock state (bit 0) and the provider (bits 1 to 3).
+ */
+public final class LocationRecord {
+    public static final int PAYLOAD_SIZE = 8 + 8 + 4 + 8 + 1;
+    public static final int RECORD_SIZE = PAYLOAD_SIZE + 4;
+
+    private static final int MOCK_FLAG = 1;
+    private static final int PROVIDER_SHIFT = 1;
+    private static final int PROVIDER_MASK = 0x7;
+    /* index is the provider code, 0 is used for unknown providers */
+    private static final String[] PROVIDERS = {
+            null,
+            LocationManager.GPS_PROVIDER,
+            LocationManager.NETWORK_PROVIDER,
+            "fused",
+            LocationManager.PASSIVE_PROVIDER,
+    };
+
+    private LocationRecord() {}
+
+    /**
+     * Write a record at the current position of the buffer.
+     * @param buffer ByteBuffer with at least RECORD_SIZE remaining bytes
+     * @param checksum CRC32 reused between calls
+     */
+    public static void write(ByteBuffer buffer, CRC32 checksum, double latitude, double longitude, float accuracy,
+                             long time, boolean mock, String provider) {
+        int start = buffer.position();
+        buffer.putDouble(latitude);
+        buffer.putDouble(longitude);
+        buffer.putFloat(accuracy);
+        buffer.putLong(time);
+        buffer.put(encodeFlags(mock, provider));
+        buffer.putInt(computeChecksum(buffer, start, checksum));
+    }
+
+    /**
+     * Check the record starting at the given offset.
+     * @param buffer ByteBuffer containing the record
+     * @param offset absolute offset of the record
+     * @param checksum CRC32 reused between calls
+     * @return true if the record is complete and its checksum is valid.
+     */
+    public static boolean isValid(ByteBuffer buffer, int offset, CRC32 checksum) {
+        if (buffer.limit() - offset < RECORD_SIZE) {
+            return false;
+        }
+        return computeChecksum(buffer, offset, checksum) == buffer.getInt(offset + PAYLOAD_SIZE);
+    }
+
+    public static double getLatitude(ByteBuffer buffer, int offset) {
+        return buffer.getDouble(offset);
+    }
+
+    public static double getLongitude(ByteBuffer buffer, int offset) {
+        return buffer.getDouble(offset + 8);
+    }
+
+    public static float getAccuracy(ByteBuffer buffer, int offset) {
+        return buffer.getFloat(offset + 16);
+    }
+
+    public static long getTime(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + 20);
+    }
+
+    public static boolean isFromMockProvider(ByteBuffer buffer, int offset) {
+        return isFromMockProvider(buffer.get(offset + 28));
+    }
+
+    public static String getProvider(ByteBuffer buffer, int offset) {
+        return getProvider(buffer.get(offset + 28));
+    }
+
+    static boolean isFromMockProvider(byte flags) {
+        return (flags & MOCK_FLAG) != 0;
+    }
+
+    static String getProvider(byte flags) {
+        int code = (flags >> PROVIDER_SHIFT) & PROVIDER_MASK;
+        return code < PROVIDERS.length ? PROVIDERS[code] : null;
+    }
+
+    /**
+     * @return the flags byte packing the mock state and the provider, also used by LocationCodec
+     */
+    static byte encodeFlags(boolean mock, String provider) {
+        int code = 0;
+        for (int i = 1; i < PROVIDERS.length; i++) {
+            if (PROVIDERS[i].equals(provider)) {
+                code = i;
+                break;
+            }
+        }
+        return (byte) ((mock ? MOCK_FLAG : 0) | (code << PROVIDER_SHIFT));
+    }
+
+    private static int computeChecksum(ByteBuffer buffer, int offset, CRC32 checksum) {
+        checksum.reset();
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + offset, PAYLOAD_SIZE);
+        } else {
+            /* CRC32.update(ByteBuffer) needs API 26 */
+            for (int i = offset; i < offset + PAYLOAD_SIZE; i++) {
+                checksum.update(buffer.get(i));
+            }
+        }
+        return (int) checksum.getValue();
+    }
+}
@@ -0,0 +1,198 @@
+package com.mobeye.geolocation;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer implementation to store computed locations.
+ * It is a FIFO constant in memory with complexity O(1) for element insertion and deletion.
+ * Locations are stored column by column in primitive arrays, so adding or reading a location does not allocate.
+ * Indexed reads use the age of the location: 0 is the most recent one.
+ * All methods are synchronized on the buffer: the location thread writes while the native modules thread reads.
+ * Callers that need several columns of the same location must synchronize on the buffer themselves.
+ * When the locations are smoothed, latitude and longitude are the smoothed coordinates and the raw ones measured by
+ * the provider are kept in their own columns; otherwise both are equal.
+ */
+public class LocationRingBuffer {
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mRawLatitudes;
+    private final double[] mRawLongitudes;
+    private final float[] mAccuracies;
+    private final long[] mTimes;
+    private final boolean[] mMocks;
+    private final String[] mProviders;
+    private final int mCapacity;
+    /* index where the next location will be written */
+    private int mWriteIndex = 0;
+    private int mSize = 0;
+
+    public LocationRingBuffer(int capacity) {
+        /* a zero sized buffer would make every modulo fail */
+        mCapacity = Math.max(capacity, 1);
+        mLatitudes = new double[mCapacity];
+        mLongitudes = new double[mCapacity];
+        mRawLatitudes = new double[mCapacity];
+        mRawLongitudes = new double[mCapacity];
+        mAccuracies = new float[mCapacity];
+        mTimes = new long[mCapacity];
+        mMocks = new boolean[mCapacity];
+        mProviders = new String[mCapacity];
+    }
+
+    /**
+     * Add a location in the buffer and overwrite the oldest one if the buffer is full.
+     */
+    public synchronized void add(double latitude, double longitude, float accuracy, long time, boolean mock,
+                                 String provider) {
+        add(latitude, longitude, latitude, longitude, accuracy, time, mock, provider);
+    }
+
+    /**
+     * Add a smoothed location in the buffer and overwrite the oldest one if the buffer is full.
+     * @param rawLatitude latitude measured by the provider
+     * @param rawLongitude longitude measured by the provider
+     */
+    public synchronized void add(double latitude, double longitude, double rawLatitude, double rawLongitude,
+                                 float accuracy, long time, boolean mock, String provider) {
+        mLatitudes[mWriteIndex] = latitude;
+        mLongitudes[mWriteIndex] = longitude;
+        mRawLatitudes[mWriteIndex] = rawLatitude;
+        mRawLongitudes[mWriteIndex] = rawLongitude;
+        mAccuracies[mWriteIndex] = accuracy;
+        mTimes[mWriteIndex] = time;
+        mMocks[mWriteIndex] = mock;
+        mProviders[mWriteIndex] = provider;
+        mWriteIndex = (mWriteIndex + 1) % mCapacity;
+        if (mSize < mCapacity) {
+            mSize++;
+        }
+    }
+
+    /**
+     * Add a location in the buffer and overwrite the oldest one if the buffer is full.
+     * @param location MyLocation object
+     */
+    public synchronized void add(MyLocation location) {
+        add(location.getLatitude(), location.getLongitude(), location.getAccuracy(), location.getTime(),
+                location.isFromMockProvider(), location.getProvider());
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public synchronized void clear() {
+        mWriteIndex = 0;
+        mSize = 0;
+        Arrays.fill(mProviders, null);
+    }
+
+    /**
+     * Convert an age (0 is the newest location) into an index of the columns.
+     * @param age age of the location, must be lower than the size
+     * @return index in the columns
+     */
+    private int indexOf(int age) {
+        if (age < 0 || age >= mSize) {
+            throw new IndexOutOfBoundsException("age: " + age + ", size: " + mSize);
+        }
+        return (mWriteIndex - 1 - age + mCapacity) % mCapacity;
+    }
+
+    public synchronized double getLatitude(int age) {
+        return mLatitudes[indexOf(age)];
+    }
+
+    public synchronized double getLongitude(int age) {
+        return mLongitudes[indexOf(age)];
+    }
+
+    public synchronized double getRawLatitude(int age) {
+        return mRawLatitudes[indexOf(age)];
+    }
+
+    public synchronized double getRawLongitude(int age) {
+        return mRawLongitudes[indexOf(age)];
+    }
+
+    public synchronized float getAccuracy(int age) {
+        return mAccuracies[indexOf(age)];
+    }
+
+    public synchronized long getTime(int age) {
+        return mTimes[indexOf(age)];
+    }
+
+    public synchronized boolean isFromMockProvider(int age) {
+        return mMocks[indexOf(age)];
+    }
+
+    public synchronized String getProvider(int age) {
+        return mProviders[indexOf(age)];
+    }
+
+    /**
+     * Get a location of the buffer as a MyLocation object.
+     * @param age age of the location, 0 is the newest one
+     * @return MyLocation object
+     */
+    public synchronized MyLocation get(int age) {
+        int index = indexOf(age);
+        return new MyLocation(mProviders[index], mLatitudes[index], mLongitudes[index], mAccuracies[index],
+                mTimes[index], mMocks[index]);
+    }
+
+    /**
+     * Get the last location added to the buffer.
+     * @return last location added to the buffer or null if the buffer is empty.
+     */
+    public synchronized MyLocation getLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        return get(0);
+    }
+
+    /**
+     * Copy the `number` newest locations into the given columns, ordered from the oldest to the newest one.
+     * Each column must have a length of at least `number`; a null column is skipped.
+     * @param number maximum number of locations to copy
+     * @return number of copied locations
+     */
+    public synchronized int copyLatest(int number, double[] latitudes, double[] longitudes, float[] accuracies,
+                                       long[] times, boolean[] mocks, String[] providers) {
+        int count = Math.max(0, Math.min(number, mSize));
+        if (count == 0) {
+            return 0;
+        }
+        int start = (mWriteIndex - count + mCapacity) % mCapacity;
+        /* the copied window may wrap around the end of the columns */
+        int firstPart = Math.min(count, mCapacity - start);
+        int secondPart = count - firstPart;
+        copyColumn(mLatitudes, latitudes, start, firstPart, secondPart);
+        copyColumn(mLongitudes, longitudes, start, firstPart, secondPart);
+        copyColumn(mAccuracies, accuracies, start, firstPart, secondPart);
+        copyColumn(mTimes, times, start, firstPart, secondPart);
+        copyColumn(mMocks, mocks, start, firstPart, secondPart);
+        copyColumn(mProviders, providers, start, firstPart, secondPart);
+        return count;
+    }
+
+    private static void copyColumn(Object source, Object destination, int start, int firstPart, int secondPart) {
+        if (destination == null) {
+            return;
+        }
+        System.arraycopy(source, start, destination, 0, firstPart);
+        if (secondPart > 0) {
+            System.arraycopy(source, 0, destination, firstPart, secondPart);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.mobeye.geolocation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide store of the computed locations, written by the module and read by any Java caller (content provider,
+ * widgets, workers, headless tasks) with typed accessors.
+ * The last used location is parsed once from the SharedPreferences and then kept in memory, the buffered locations
+ * are read from the live buffer of the module, or from the location log when the module is not running in the
+ * process, followed by the locations captured by the tracking service and not yet drained by the module. How the
+ * locations are persisted is an implementation detail of the store.
+ * Methods are thread safe.
+ */
+public final class LocationStore {
+    static final String PREFERENCES_NAME = "com.mobeye.geolocation.sharedpref";
+    static final String LOCATION_LOG_PATH = "mobeye-geolocation/locations.bin";
+    static final String LOCATION_HISTORY_PATH = "mobeye-geolocation/history.bin";
+    static final String BACKLOG_PATH = "mobeye-geolocation/backlog.bin";
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(MyLocation.class, new MyLocation.Adapter())
+            .create();
+
+    private static volatile LocationStore sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+    /* locations of the module running in this process, null if it is not configured */
+    private volatile LocationRingBuffer mBuffer;
+    private volatile LocationHistory mHistory;
+    private boolean mLastUsedLocationLoaded = false;
+    private MyLocation mLastUsedLocation;
+    private String mLastUsedLocationJson = "";
+    /* locations captured by the tracking service, appended on its thread and drained on the one of the module */
+    private final LocationLog mBacklog;
+
+    private LocationStore(Context context) {
+        mContext = context;
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mBacklog = new LocationLog(new File(context.getFilesDir(), BACKLOG_PATH));
+    }
+
+    /**
+     * @param context any context, the store keeps the application context
+     * @return the store of the process
+     */
+    public static LocationStore getInstance(Context context) {
+        LocationStore instance = sInstance;
+        if (instance == null) {
+            synchronized (LocationStore.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new LocationStore(context.getApplicationContext());
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the last location sent to JS, null if there is none
+     */
+    public synchronized MyLocation getLastUsedLocation() {
+        loadLastUsedLocation();
+        return mLastUsedLocation;
+    }
+
+    /**
+     * @return the last used location as saved by previous versions, an empty string if there is none
+     */
+    synchronized String getLastUsedLocationJson() {
+        loadLastUsedLocation();
+        return mLastUsedLocationJson;
+    }
+
+    /**
+     * Save the last location sent to JS.
+     * @return size in bytes of the persisted location
+     */
+    public synchronized int setLastUsedLocation(MyLocation location) {
+        mLastUsedLocationLoaded = true;
+        mLastUsedLocation = location;
+        mLastUsedLocationJson = GSON.toJson(location);
+        SharedPreferences.Editor editor = mPreferences.edit();
+        editor.putString(StoreKeys.LAST_USED_LOCATION.name(), mLastUsedLocationJson);
+        editor.apply();
+        /* the JSON of a location is ASCII, one byte per character */
+        return mLastUsedLocationJson.length();
+    }
+
+    /**
+     * Get the newest buffered locations, with the ones captured by the tracking service and not yet drained by the
+     * module.
+     * @param number maximum number of locations
+     * @return locations from the newest to the oldest one
+     */
+    public List<MyLocation> snapshot(int number) {
+        LocationRingBuffer buffer = getBuffer();
+        int size = Math.max(0, Math.min(number, buffer.capacity()));
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        float[] accuracies = new float[size];
+        long[] times = new long[size];
+        boolean[] mocks = new boolean[size];
+        String[] providers = new String[size];
+        /* one synchronized copy, so the locations are consistent while the module keeps buffering */
+        size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, providers);
+        List<MyLocation> locations = new ArrayList<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            locations.add(new MyLocation(providers[i], latitudes[i], longitudes[i], accuracies[i], times[i],
+                    mocks[i]));
+        }
+        return locations;
+    }
+
+    /**
+     * @return the live buffer of the module, or a buffer read from the location log if the module is not configured,
+     * followed by the newer locations of the backlog
+     */
+    LocationRingBuffer getBuffer() {
+        LocationRingBuffer backlog = readBacklog();
+        LocationRingBuffer buffer = mBuffer;
+        if (buffer == null) {
+            return readLocationLog(backlog);
+        }
+        if (backlog == null) {
+            return buffer;
+        }
+        /* the live buffer is copied, the module keeps its own buffer until it drains the backlog */
+        LocationRingBuffer merged = new LocationRingBuffer(buffer.capacity());
+        int size = buffer.capacity();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        float[] accuracies = new float[size];
+        long[] times = new long[size];
+        boolean[] mocks = new boolean[size];
+        String[] providers = new String[size];
+        size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, providers);
+        for (int i = 0; i < size; i++) {
+            merged.add(latitudes[i], longitudes[i], accuracies[i], times[i], mocks[i], providers[i]);
+        }
+        addNewerLocations(merged, backlog);
+        return merged;
+    }
+
+    /**
+     * @return the open history of the module, null if it is disabled or the module is not configured
+     */
+    LocationHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Serve the buffered locations from the buffer of the module, null when the module is destroyed.
+     */
+    void attachBuffer(LocationRingBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Serve the history queries from the history of the module, null when it is disabled or closed.
+     */
+    void attachHistory(LocationHistory history) {
+        mHistory = history;
+    }
+
+    /**
+     * Append the `number` newest locations of a buffer to the backlog.
+     * @throws IOException if the backlog can not be written
+     */
+    void appendToBacklog(LocationRingBuffer buffer, int number) throws IOException {
+        synchronized (mBacklog) {
+            mBacklog.append(buffer, number);
+        }
+    }
+
+    /**
+     * Read and remove every location of the backlog, the service appends the next ones to an empty backlog.
+     * @return the locations from the oldest to the newest one, null if the backlog is empty
+     * @throws IOException if the backlog can not be read, it is then kept
+     */
+    LocationRingBuffer drainBacklog() throws IOException {
+        synchronized (mBacklog) {
+            LocationRingBuffer backlog = readBacklogLocked();
+            if (backlog != null) {
+                mBacklog.delete();
+            }
+            return backlog;
+        }
+    }
+
+    /**
+     * Read the backlog without removing it, for the readers of the store while the tracking service runs.
+     * @return the locations from the oldest to the newest one, null if the backlog is empty or can not be read
+     */
+    private LocationRingBuffer readBacklog() {
+        synchronized (mBacklog) {
+            try {
+                return readBacklogLocked();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of the backlog, so the service does not append during the read.
+     */
+    private LocationRingBuffer readBacklogLocked() throws IOException {
+        long count = mBacklog.exists() ? mBacklog.getRecordCount() : 0;
+        if (count == 0) {
+            return null;
+        }
+        LocationRingBuffer backlog = new LocationRingBuffer((int) Math.min(count, Integer.MAX_VALUE));
+        mBacklog.readInto(backlog);
+        return backlog.isEmpty() ? null : backlog;
+    }
+
+    File getLocationLogFile() {
+        return new File(mContext.getFilesDir(), LOCATION_LOG_PATH);
+    }
+
+    File getLocationHistoryFile() {
+        return new File(mContext.getFilesDir(), LOCATION_HISTORY_PATH);
+    }
+
+    private void loadLastUsedLocation() {
+        if (mLastUsedLocationLoaded) {
+            return;
+        }
+        mLastUsedLocationLoaded = true;
+        String json = mPreferences.getString(StoreKeys.LAST_USED_LOCATION.name(), "");
+        mLastUsedLocationJson = json;
+        if (json.isEmpty() || json.equals("null") || json.equals("[]")) {
+            return;
+        }
+        try {
+            mLastUsedLocation = GSON.fromJson(json, MyLocation.class);
+        } catch (JsonParseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read the locations saved by the module, when it does not run in this process.
+     * @param backlog locations of the backlog, null if it is empty
+     * @return buffer holding the saved locations followed by the newer ones of the backlog, empty if there is none
+     */
+    private LocationRingBuffer readLocationLog(LocationRingBuffer backlog) {
+        LocationLog log = new LocationLog(getLocationLogFile());
+        long capacity = log.getRecordCount() + (backlog != null ? backlog.size() : 0);
+        LocationRingBuffer buffer = new LocationRingBuffer((int) Math.min(capacity, Integer.MAX_VALUE));
+        try {
+            /* the log belongs to the module, a torn record is left for it to repair */
+            log.readInto(buffer, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (backlog != null) {
+            addNewerLocations(buffer, backlog);
+        }
+        return buffer;
+    }
+
+    /**
+     * Add the locations of the backlog newer than the newest one of the buffer, as the module does when it drains the
+     * backlog. The locations are not simplified with the backlog tolerance yet.
+     */
+    private static void addNewerLocations(LocationRingBuffer buffer, LocationRingBuffer backlog) {
+        long newestTime = buffer.isEmpty() ? Long.MIN_VALUE : buffer.getTime(0);
+        for (int age = backlog.size() - 1; age >= 0; age--) {
+            if (backlog.getTime(age) > newestTime) {
+                buffer.add(backlog.getLatitude(age), backlog.getLongitude(age), backlog.getAccuracy(age),
+                        backlog.getTime(age), backlog.isFromMockProvider(age), backlog.getProvider(age));
+            }
+        }
+    }
+}
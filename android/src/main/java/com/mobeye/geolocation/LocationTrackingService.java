@@ -0,0 +1,224 @@
+package com.mobeye.geolocation;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.location.Location;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.IOException;
+
+/**
+ * Foreground service capturing the locations without the React instance, so the tracking does not depend on the
+ * lifetime of the JS engine.
+ * Locations are filtered as in the module with the configuration given to start, then appended to the backlog of the
+ * LocationStore. The module drains the backlog when the app comes back to the foreground.
+ * The service runs in the process of the app, it is restarted with its configuration if the system kills it.
+ */
+public class LocationTrackingService extends Service {
+    private static final String EXTRA_CONFIGURATION = "configuration";
+    private static final String EXTRA_NOTIFICATION_TITLE = "notificationTitle";
+    private static final String EXTRA_NOTIFICATION_TEXT = "notificationText";
+    private static final String EXTRA_NOTIFICATION_ICON = "notificationIcon";
+    private static final String CHANNEL_ID = "mobeye-geolocation-tracking";
+    private static final int NOTIFICATION_ID = 4701;
+
+    private static volatile boolean sRunning = false;
+
+    private HandlerThread mLocationThread;
+    private FusedLocationProviderClient mLocationProvider;
+    private final LocationFilterChain mLocationFilterChain =
+            new LocationFilterChain(MobeyeGeolocationModule.getLocationFilters());
+    /* locations of the current callback, only used from the location thread */
+    private LocationRingBuffer mBufferedLocations;
+    private LocationStore mLocationStore;
+
+    /**
+     * Start the tracking, or update the configuration and the notification of the running service.
+     * The app must hold the location permissions, and the notification permission to show the notification.
+     * @param notificationIcon name of a drawable of the app used as the small icon of the notification, null to use
+     *                         the location pin of the library
+     */
+    static void start(Context context, LocationConfiguration configuration, String notificationTitle,
+                      String notificationText, String notificationIcon) {
+        Intent intent = new Intent(context, LocationTrackingService.class);
+        intent.putExtra(EXTRA_CONFIGURATION, toBundle(configuration));
+        intent.putExtra(EXTRA_NOTIFICATION_TITLE, notificationTitle);
+        intent.putExtra(EXTRA_NOTIFICATION_TEXT, notificationText);
+        intent.putExtra(EXTRA_NOTIFICATION_ICON, notificationIcon);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    static void stop(Context context) {
+        context.stopService(new Intent(context, LocationTrackingService.class));
+    }
+
+    /**
+     * @return true if the service is tracking in this process
+     */
+    public static boolean isRunning() {
+        return sRunning;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mLocationStore = LocationStore.getInstance(this);
+        mLocationProvider = LocationServices.getFusedLocationProviderClient(this);
+        mLocationThread = new HandlerThread("MobeyeGeolocationTracking", Process.THREAD_PRIORITY_BACKGROUND);
+        mLocationThread.start();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Bundle bundle = intent != null ? intent.getBundleExtra(EXTRA_CONFIGURATION) : null;
+        if (bundle == null) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        Notification notification = buildNotification(intent.getStringExtra(EXTRA_NOTIFICATION_TITLE),
+                intent.getStringExtra(EXTRA_NOTIFICATION_TEXT), intent.getStringExtra(EXTRA_NOTIFICATION_ICON));
+        mLocationFilterChain.configure(bundle.getInt("maxLocationAge"), bundle.getBoolean("rejectMockLocations"),
+                bundle.getInt("maxAccuracy"), bundle.getInt("maxSpeed"));
+        LocationRequest request = toLocationRequest(bundle);
+        try {
+            /* the service must be in the foreground within a few seconds of its start */
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION);
+            } else {
+                startForeground(NOTIFICATION_ID, notification);
+            }
+            /* a new request replaces the previous one of the callback */
+            mLocationProvider.requestLocationUpdates(request, locationCallback, mLocationThread.getLooper());
+        } catch (SecurityException e) {
+            /* the location permissions have been revoked, a location service cannot be started without them */
+            e.printStackTrace();
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        sRunning = true;
+        /* the intent, and so the configuration, is delivered again if the system restarts the service */
+        return START_REDELIVER_INTENT;
+    }
+
+    @Override
+    public void onDestroy() {
+        sRunning = false;
+        mLocationProvider.removeLocationUpdates(locationCallback);
+        mLocationThread.quitSafely();
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * Save the values of the configuration used by the service, the configuration has already been validated.
+     * The bundle is kept in the intent, so the service is restarted with it.
+     */
+    private static Bundle toBundle(LocationConfiguration configuration) {
+        Bundle bundle = new Bundle();
+        bundle.putString("desiredAccuracy", configuration.getDesiredAccuracy().getValue());
+        bundle.putInt("updateInterval", configuration.getUpdateInterval());
+        bundle.putInt("distanceFilter", configuration.getDistanceFilter());
+        bundle.putInt("maxWaitTime", configuration.getMaxWaitTime());
+        bundle.putInt("maxLocationAge", configuration.getMaxLocationAge());
+        bundle.putBoolean("rejectMockLocations", configuration.isRejectMockLocations());
+        bundle.putInt("maxAccuracy", configuration.getMaxAccuracy());
+        bundle.putInt("maxSpeed", configuration.getMaxSpeed());
+        return bundle;
+    }
+
+    /**
+     * @param bundle configuration saved by toBundle
+     */
+    private static LocationRequest toLocationRequest(Bundle bundle) {
+        LocationRequest request = LocationRequest.create();
+        LevelAccuracy accuracy = LevelAccuracy.fromValue(bundle.getString("desiredAccuracy"));
+        request.setPriority(LevelAccuracy.PRIORITY_MAP.get(accuracy));
+        request.setInterval(bundle.getInt("updateInterval"));
+        request.setSmallestDisplacement(bundle.getInt("distanceFilter"));
+        request.setMaxWaitTime(bundle.getInt("maxWaitTime"));
+        return request;
+    }
+
+    private Notification buildNotification(String title, String text, String iconName) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            /* the app can rename the channel by overriding the string resource */
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.mobeye_geolocation_tracking_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+        /* a notification without a valid small icon can not be posted, the launcher icon of the app may be missing or
+         * an adaptive icon, so the library provides its own */
+        int icon = iconName != null ? getResources().getIdentifier(iconName, "drawable", getPackageName()) : 0;
+        if (icon == 0) {
+            icon = R.drawable.mobeye_geolocation_notification;
+        }
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setSmallIcon(icon)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW);
+        /* open the app from the notification */
+        Intent launchIntent = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (launchIntent != null) {
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launchIntent, PendingIntent.FLAG_IMMUTABLE));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Append the accepted locations to the backlog as soon as they are delivered, the process may be killed at any
+     * time. It runs on the location thread of the service.
+     */
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult locationResult) {
+            int size = locationResult.getLocations().size();
+            if (mBufferedLocations == null || mBufferedLocations.capacity() < size) {
+                mBufferedLocations = new LocationRingBuffer(Math.max(size, 16));
+            }
+            int accepted = 0;
+            for (Location location : locationResult.getLocations()) {
+                if (mLocationFilterChain.accept(location)) {
+                    mBufferedLocations.add(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                            location.getTime(), location.isFromMockProvider(), location.getProvider());
+                    accepted++;
+                }
+            }
+            if (accepted == 0) {
+                return;
+            }
+            try {
+                mLocationStore.appendToBacklog(mBufferedLocations, accepted);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    };
+}
@@ -10,16 +10,22 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 
 import com.facebook.react.bridge.ActivityEventListener;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.google.android.gms.common.api.ApiException;
@@ -36,19 +42,24 @@ import com.google.android.gms.location.Priority;
 import com.google.android.gms.location.SettingsClient;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.lang.reflect.Type;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
-import java.util.Deque;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
@@ -59,38 +70,86 @@ import static androidx.core.content.ContextCompat.checkSelfPermission;
 /**
  * Location module using FusedLocationProviderClient.
  */
-public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implements LifecycleEventListener,
+public class MobeyeGeolocationModule extends MobeyeGeolocationSpec implements LifecycleEventListener,
         ActivityEventListener {
+    public static final String NAME = "MobeyeGeolocation";
     private static final List<String> NULL_STORE_ARRAY = Arrays.asList("null", "", "[]");
-    private static final Type DEQUE_TYPE = new TypeToken<Deque<MyLocation>>() {
-    }.getType();
-    private static final Gson GSON = new Gson();
     private static String LOCATION_UPDATED = "LOCATION_UPDATED";
+    private static final String POINT_OF_INTEREST_TRANSITION = "POINT_OF_INTEREST_TRANSITION";
+    private static final String LOCATION_BACKLOG = "LOCATION_BACKLOG";
+    private static final long DAY_IN_MILLISECONDS = 24 * 60 * 60 * 1000L;
+    /* maximum time a synchronous read waits for the restoration of the buffer */
+    private static final long RESTORE_TIMEOUT = 2000;
+    /* delay in milliseconds before the request follows the app to the background or foreground, so quick app
+     * switches do not re-register the provider each time */
+    private static final long LIFECYCLE_DEBOUNCE = 1000;
+    /* the cell index keeps the history locations of the last day, up to this number of locations, older queries read
+     * the history */
+    private static final long CELL_INDEX_WINDOW = DAY_IN_MILLISECONDS;
+    private static final int CELL_INDEX_MAX_SIZE = 10000;
     private MobeyeLocationCheck mLocationProviderReceiver;
     protected static final int REQUEST_CHECK_SETTINGS = 1; //A unique integer there to distinguish check settings event
     // uniquely in the range (0- max(int)). -1 hides the dialog box and any value below -1 simply crashes the app.
 
     private ReactContext mReactContext;
     private SharedPreferences mPreferences;
-    /* FIXME use a RingBuffer instead of Deque */
-    private Deque<MyLocation> mBufferedLocations;
+    /* last used location and buffer shared with the native callers of the process */
+    private final LocationStore mLocationStore;
+    /* the buffer is written by the location thread and read by the native modules thread */
+    private volatile LocationRingBuffer mBufferedLocations;
     private LocationConfiguration mInitialConfiguration;
     private LocationConfiguration mCurrentConfiguration;
     private FusedLocationProviderClient mLocationProvider;
-    private LocationRequest mLocationRequest = LocationRequest.create();
+    /* request of the active profile, a new instance is built when the profile changes, it is never modified */
+    private volatile LocationRequest mLocationRequest = LocationRequest.create();
+    /* request registered to the provider, null if the updates are not requested, only used from the location thread */
+    private LocationRequest mRegisteredRequest;
     private LocationSettingsRequest mLocationSettingsRequest;
-    private MyLocation mLastUsedLocation;
-    private Boolean mInBackground;
+    private volatile Boolean mInBackground;
+    /* thread where the provider delivers locations, so the callback does not run on the main looper */
+    private HandlerThread mLocationThread;
+    private Handler mLocationHandler;
+    /* binary log of the buffer, only used from the location thread */
+    private LocationLog mLocationLog;
+    /* true once the stored buffer has been restored by the location thread */
+    private volatile boolean mRestored = false;
+    /* number of buffered locations not yet written in the log */
+    private int mUnsavedLocations = 0;
+    private final SignificantChangeDetector mSignificantChangeDetector = new SignificantChangeDetector();
+    private final EmissionPolicy mEmissionPolicy = new EmissionPolicy();
+    private final KalmanFilter mKalmanFilter = new KalmanFilter();
+    /* filters added by the app, shared by the chains of the module and of the tracking service */
+    private static final List<LocationFilter> sLocationFilters = new CopyOnWriteArrayList<>();
+    private final LocationFilterChain mLocationFilterChain = new LocationFilterChain(sLocationFilters);
+    private final AdaptiveSampler mAdaptiveSampler = new AdaptiveSampler();
+    private final Diagnostics mDiagnostics = new Diagnostics();
+    private static volatile Diagnostics.Listener sDiagnosticsListener;
+    /* buffered and history locations by cell, only used from the location thread */
+    private final LocationCellIndex mLocationCellIndex = new LocationCellIndex();
+    /* monitored points of interest, null if there is none, only used from the location thread */
+    private ProximityMonitor mProximityMonitor;
+    /* latest location event delayed by the emission policy, only used from the location thread */
+    private WritableMap mPendingEvent;
+    private double mPendingLatitude;
+    private double mPendingLongitude;
+    private long mPendingCallbackStart;
+    /* optional on-disk history, null if disabled */
+    private volatile LocationHistory mLocationHistory;
 
     public MobeyeGeolocationModule(ReactApplicationContext reactContext) {
         super(reactContext);
         mReactContext = reactContext;
         mReactContext.addLifecycleEventListener(this);
         mReactContext.addActivityEventListener(this);
-        mPreferences = reactContext.getSharedPreferences("com.mobeye.geolocation.sharedpref", Context.MODE_PRIVATE);
+        mPreferences = reactContext.getSharedPreferences(LocationStore.PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mLocationStore = LocationStore.getInstance(reactContext);
         this.mLocationProviderReceiver = new MobeyeLocationCheck(reactContext);
         mReactContext.registerReceiver(mLocationProviderReceiver, new IntentFilter("android.location.PROVIDERS_CHANGED"));
         mInBackground = false;
+        mLocationThread = new HandlerThread("MobeyeGeolocation", Process.THREAD_PRIORITY_BACKGROUND);
+        mLocationThread.start();
+        mLocationHandler = new Handler(mLocationThread.getLooper());
+        mLocationLog = new LocationLog(mLocationStore.getLocationLogFile());
     }
 
     /**
@@ -100,7 +159,7 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     @NonNull
     @Override
     public String getName() {
-        return "MobeyeGeolocation";
+        return NAME;
     }
 
     /**
@@ -109,19 +168,23 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
      */
     @ReactMethod
     public void configure(ReadableMap configuration, Promise promise) {
-        JsonElement jsonElement = GSON.toJsonTree(configuration.toHashMap());
         try {
-            mInitialConfiguration = GSON.fromJson(jsonElement, LocationConfiguration.class);
-        } catch (JsonParseException e) {
-            GeolocationError err = GeolocationError.INVALID_CONFIGURATION;
-            promise.reject(String.valueOf(err.getCode()), err.getDescription());
+            mInitialConfiguration = LocationConfiguration.fromReadableMap(configuration);
+        } catch (InvalidConfigurationException e) {
+            promise.reject(String.valueOf(e.getError().getCode()), e.getMessage());
             return;
         }
         mCurrentConfiguration = mInitialConfiguration;
-        mBufferedLocations = new ArrayDeque<>(mInitialConfiguration.getBufferSize());
+        configureLocationFilters();
+        mBufferedLocations = new LocationRingBuffer(mInitialConfiguration.getBufferSize());
+        mLocationStore.attachBuffer(mBufferedLocations);
         /* create provider and get settings client */
         mLocationProvider = LocationServices.getFusedLocationProviderClient(
                 getReactApplicationContext());
+        /* open the on-disk history */
+        if (mInitialConfiguration.isHistoryEnabled()) {
+            openLocationHistory(mInitialConfiguration.getHistoryRetentionDays());
+        }
         /* get stored data */
         getStoredData();
         /* define options */
@@ -131,43 +194,400 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
 
     @ReactMethod
     public void start() {
-        startUpdatingLocation();
+        mLocationHandler.post(this::startUpdatingLocation);
     }
 
     /**
      * Get last locations computed by the provider.
+     * While the stored buffer is being restored after `configure`, the promise is resolved once the restoration is
+     * done, so it never returns a partial buffer.
      * @param number `number` last computed locations.
-     * @param promise a promise that returns a list of locations to the JS code.
+     * @param promise a promise that returns the packed locations to the JS code, see LocationArrays.
      */
     @ReactMethod
-    public void getLastLocations(Integer number, Promise promise) {
+    public void getLastLocations(final double number, final Promise promise) {
         if (mBufferedLocations == null) {
             GeolocationError err = GeolocationError.NO_LOCATION_AVAILABLE;
             promise.reject(String.valueOf(err.getCode()), err.getDescription());
             return;
         }
-        Iterator<MyLocation> iterator = mBufferedLocations.descendingIterator();
-        List<MyLocation> locationList = new ArrayList<>();
-        int i = 0;
+        if (!mRestored) {
+            /* the restoration runs on the location thread, this task is executed after it */
+            mLocationHandler.post(() -> resolveLastLocations((int) number, promise));
+            return;
+        }
+        resolveLastLocations((int) number, promise);
+    }
 
-        while (iterator.hasNext() && i < number) {
-            locationList.add(iterator.next());
-            i++;
+    private void resolveLastLocations(int number, Promise promise) {
+        promise.resolve(LocationArrays.toPackedArray(mBufferedLocations, number));
+    }
+
+    /**
+     * Synchronous version of getLastLocations, called from the JS thread without a promise.
+     * While the stored buffer is being restored, it waits for the restoration at most RESTORE_TIMEOUT.
+     * @param number `number` last computed locations.
+     * @return the packed locations, see LocationArrays, empty if the provider is not configured or if the buffer is
+     * not restored in time.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableArray getLastLocationsSync(final double number) {
+        final LocationRingBuffer buffer = mBufferedLocations;
+        if (buffer == null) {
+            return Arguments.createArray();
         }
-        String json = GSON.toJson(locationList);
-        promise.resolve(json);
+        if (!mRestored) {
+            /* the restoration runs on the location thread, this task is executed after it */
+            FutureTask<WritableArray> task = new FutureTask<>(
+                    () -> LocationArrays.toPackedArray(buffer, (int) number));
+            mLocationHandler.post(task);
+            try {
+                return task.get(RESTORE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                e.printStackTrace();
+            }
+            /* the buffer may be partially restored, do not return a part of it */
+            task.cancel(false);
+            return Arguments.createArray();
+        }
+        return LocationArrays.toPackedArray(buffer, (int) number);
+    }
+
+    /**
+     * Get the last used location synchronously, called from the JS thread without a promise.
+     * @return the last used location, null if there is none.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getLastUsedLocationSync() {
+        MyLocation lastUsedLocation = mLocationStore.getLastUsedLocation();
+        return lastUsedLocation != null ? lastUsedLocation.toMap() : null;
     }
 
+    /**
+     * Required by NativeEventEmitter, events are sent through DeviceEventManagerModule.
+     */
     @ReactMethod
-    public void setTemporaryConfiguration(ReadableMap configuration, Promise promise) {
-        JsonElement jsonElement = GSON.toJsonTree(configuration.toHashMap());
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+
+    /**
+     * Get the buffered track simplified with the Douglas-Peucker algorithm.
+     * The simplification runs on the location thread, after the restoration of the stored buffer.
+     * @param tolerance maximum distance in meters between a removed location and the simplified track
+     * @param since time in milliseconds of the oldest location of the track, inclusive
+     * @param promise a promise that returns the retained locations packed like getLastLocations, ordered from the
+     *                oldest to the newest one.
+     */
+    @ReactMethod
+    public void getSimplifiedTrack(final double tolerance, final double since, final Promise promise) {
+        final LocationRingBuffer buffer = mBufferedLocations;
+        if (buffer == null) {
+            GeolocationError err = GeolocationError.NO_LOCATION_AVAILABLE;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription());
+            return;
+        }
+        mLocationHandler.post(() -> {
+            int size = buffer.size();
+            double[] latitudes = new double[size];
+            double[] longitudes = new double[size];
+            float[] accuracies = new float[size];
+            long[] times = new long[size];
+            boolean[] mocks = new boolean[size];
+            size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, null);
+            /* locations are buffered in their order of arrival, the track starts after the last older one */
+            int first = size;
+            while (first > 0 && times[first - 1] >= since) {
+                first--;
+            }
+            int[] retained = new int[size - first];
+            int count = TrackSimplifier.simplify(latitudes, longitudes, first, size, Math.max(tolerance, 0),
+                    retained);
+            promise.resolve(LocationArrays.toPackedArray(latitudes, longitudes, accuracies, times, mocks, retained,
+                    count));
+        });
+    }
+
+    /**
+     * Get the known locations, buffered or in the history, computed since a date within a distance of a point.
+     * Only the cells around the point are visited, the locations older than the cell index are read from the history.
+     * @param radius distance in meters
+     * @param since time in milliseconds, inclusive
+     * @param promise a promise that returns the locations as a packed array, from the oldest to the newest one
+     */
+    @ReactMethod
+    public void getLocationsNear(final double latitude, final double longitude, final double radius,
+                                 final double since, final Promise promise) {
+        mLocationHandler.post(() -> {
+            WritableArray packed = Arguments.createArray();
+            LocationHistory.RecordReader reader = (recordLatitude, recordLongitude, accuracy, time, mock, provider) -> {
+                if (Geodesy.haversine(latitude, longitude, recordLatitude, recordLongitude) <= radius) {
+                    LocationArrays.push(packed, recordLatitude, recordLongitude, accuracy, time, mock);
+                }
+            };
+            try {
+                readHistoryBeforeCellIndex((long) since, reader);
+            } catch (IOException e) {
+                GeolocationError err = GeolocationError.HISTORY_FAILURE;
+                promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+                return;
+            }
+            int[] slots = mLocationCellIndex.findNear(latitude, longitude, radius, (long) since);
+            for (int slot : slots) {
+                LocationArrays.push(packed, mLocationCellIndex.getLatitudes()[slot],
+                        mLocationCellIndex.getLongitudes()[slot], mLocationCellIndex.getAccuracies()[slot],
+                        mLocationCellIndex.getTimes()[slot], mLocationCellIndex.getMocks()[slot]);
+            }
+            promise.resolve(packed);
+        });
+    }
+
+    /**
+     * Get the cells visited since a date by the known locations, buffered or in the history.
+     * @param since time in milliseconds, inclusive
+     * @param promise a promise that returns the geohashes of the cells, of LocationCellIndex.CELL_PRECISION characters
+     */
+    @ReactMethod
+    public void getVisitedCells(final double since, final Promise promise) {
+        mLocationHandler.post(() -> {
+            Set<String> visited = new HashSet<>(mLocationCellIndex.getVisitedCells((long) since));
+            try {
+                readHistoryBeforeCellIndex((long) since, (latitude, longitude, accuracy, time, mock, provider) ->
+                        visited.add(LocationCellIndex.geohash(latitude, longitude)));
+            } catch (IOException e) {
+                GeolocationError err = GeolocationError.HISTORY_FAILURE;
+                promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+                return;
+            }
+            WritableArray cells = Arguments.createArray();
+            for (String cell : visited) {
+                cells.pushString(cell);
+            }
+            promise.resolve(cells);
+        });
+    }
+
+    /**
+     * Monitor a set of points of interest: a POINT_OF_INTEREST_TRANSITION event is sent each time the user enters or
+     * exits one of them. The points replace the previously monitored ones.
+     * @param points array of points with an `id`, a `latitude`, a `longitude` and a `radius` in meters
+     * @param promise a promise resolved once the points are monitored
+     */
+    @ReactMethod
+    public void setPointsOfInterest(ReadableArray points, final Promise promise) {
+        int count = points.size();
+        String[] ids = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        float[] radii = new float[count];
+        for (int i = 0; i < count; i++) {
+            ReadableMap point = points.getType(i) == ReadableType.Map ? points.getMap(i) : null;
+            if (point == null || !hasType(point, "id", ReadableType.String)
+                    || !hasType(point, "latitude", ReadableType.Number)
+                    || !hasType(point, "longitude", ReadableType.Number)
+                    || !hasType(point, "radius", ReadableType.Number) || !(point.getDouble("radius") > 0)) {
+                GeolocationError err = GeolocationError.INVALID_POINT_OF_INTEREST;
+                promise.reject(String.valueOf(err.getCode()), err.getDescription() + " (index " + i + ")");
+                return;
+            }
+            ids[i] = point.getString("id");
+            latitudes[i] = point.getDouble("latitude");
+            longitudes[i] = point.getDouble("longitude");
+            radii[i] = (float) point.getDouble("radius");
+        }
+        final PoiIndex index = new PoiIndex(ids, latitudes, longitudes, radii);
+        mLocationHandler.post(() -> {
+            mProximityMonitor = new ProximityMonitor(index);
+            /* the user may already be inside some points */
+            checkProximity();
+            promise.resolve(null);
+        });
+    }
+
+    private static boolean hasType(ReadableMap map, String key, ReadableType type) {
+        return map.hasKey(key) && map.getType(key) == type;
+    }
+
+    /**
+     * Stop monitoring the points of interest.
+     */
+    @ReactMethod
+    public void clearPointsOfInterest() {
+        mLocationHandler.post(() -> mProximityMonitor = null);
+    }
+
+    /**
+     * Get the points of interest nearest to the last buffered location.
+     * @param number maximum number of points
+     * @param promise a promise that returns the points with their `id` and `distance` in meters, from the nearest to
+     *                the farthest one.
+     */
+    @ReactMethod
+    public void getNearestPointsOfInterest(final double number, final Promise promise) {
+        mLocationHandler.post(() -> {
+            LocationRingBuffer buffer = mBufferedLocations;
+            if (buffer == null || buffer.isEmpty()) {
+                GeolocationError err = GeolocationError.NO_LOCATION_AVAILABLE;
+                promise.reject(String.valueOf(err.getCode()), err.getDescription());
+                return;
+            }
+            WritableArray nearest = Arguments.createArray();
+            if (mProximityMonitor != null) {
+                PoiIndex index = mProximityMonitor.getIndex();
+                int maxCount = Math.max(0, Math.min((int) number, index.size()));
+                int[] indices = new int[maxCount];
+                double[] distances = new double[maxCount];
+                int count = index.findNearest(buffer.getLatitude(0), buffer.getLongitude(0), maxCount, indices,
+                        distances);
+                for (int i = 0; i < count; i++) {
+                    WritableMap point = Arguments.createMap();
+                    point.putString("id", index.getId(indices[i]));
+                    point.putDouble("distance", distances[i]);
+                    nearest.pushMap(point);
+                }
+            }
+            promise.resolve(nearest);
+        });
+    }
+
+    /**
+     * Get the locations of the on-disk history computed between two dates.
+     * @param start start time in milliseconds, inclusive
+     * @param end end time in milliseconds, inclusive
+     * @param promise a promise that returns a list of locations ordered from the oldest to the newest one.
+     */
+    @ReactMethod
+    public void getLocationsBetween(double start, double end, final Promise promise) {
+        LocationHistory history = mLocationHistory;
+        if (history == null) {
+            GeolocationError err = GeolocationError.HISTORY_DISABLED;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription());
+            return;
+        }
+        final WritableArray locations = Arguments.createArray();
         try {
-            mCurrentConfiguration = GSON.fromJson(jsonElement, LocationConfiguration.class);
-        } catch (JsonParseException e) {
-            GeolocationError err = GeolocationError.INVALID_CONFIGURATION;
+            history.getLocationsBetween((long) start, (long) end,
+                    (latitude, longitude, accuracy, time, mock, provider) ->
+                            locations.pushMap(MyLocation.toMap(latitude, longitude, accuracy, time, mock)));
+        } catch (IOException e) {
+            GeolocationError err = GeolocationError.HISTORY_FAILURE;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+            return;
+        }
+        promise.resolve(locations);
+    }
+
+    /**
+     * Export the locations computed between two dates to a file encoded by LocationCodec, about 10 bytes per location,
+     * to upload them in bulk. Locations are read from the on-disk history when it is enabled, from the buffer
+     * otherwise. The file is written in the cache directory, the caller deletes it once uploaded.
+     * @param start start time in milliseconds, inclusive
+     * @param end end time in milliseconds, inclusive
+     * @param promise a promise that returns the `path` of the file, the `count` of locations and its `size` in bytes
+     */
+    @ReactMethod
+    public void exportLocations(final double start, final double end, final Promise promise) {
+        final LocationRingBuffer buffer = mBufferedLocations;
+        final LocationHistory history = mLocationHistory;
+        if (buffer == null && history == null) {
+            GeolocationError err = GeolocationError.NO_LOCATION_AVAILABLE;
             promise.reject(String.valueOf(err.getCode()), err.getDescription());
             return;
         }
+        mLocationHandler.post(() -> {
+            /* the locations are encoded as they are read, without copying the whole history */
+            LocationCodec.Encoder encoder;
+            if (history != null) {
+                encoder = new LocationCodec.Encoder();
+                try {
+                    history.getLocationsBetween((long) start, (long) end, encoder);
+                } catch (IOException e) {
+                    GeolocationError err = GeolocationError.HISTORY_FAILURE;
+                    promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+                    return;
+                }
+            } else {
+                int size = buffer.capacity();
+                double[] latitudes = new double[size];
+                double[] longitudes = new double[size];
+                float[] accuracies = new float[size];
+                long[] times = new long[size];
+                boolean[] mocks = new boolean[size];
+                String[] providers = new String[size];
+                size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, providers);
+                encoder = new LocationCodec.Encoder(size);
+                /* locations are ordered from the oldest one */
+                for (int i = 0; i < size; i++) {
+                    if (times[i] >= start && times[i] <= end) {
+                        encoder.read(latitudes[i], longitudes[i], accuracies[i], times[i], mocks[i], providers[i]);
+                    }
+                }
+            }
+            byte[] track = encoder.toByteArray();
+            File file = new File(mReactContext.getCacheDir(), "mobeye-geolocation/export-"
+                    + System.currentTimeMillis() + ".bin");
+            File parent = file.getParentFile();
+            try {
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Can not create " + parent);
+                }
+                try (FileOutputStream output = new FileOutputStream(file)) {
+                    output.write(track);
+                }
+            } catch (IOException e) {
+                GeolocationError err = GeolocationError.DEFAULT_ERROR;
+                promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+                return;
+            }
+            WritableMap result = Arguments.createMap();
+            result.putString("path", file.getAbsolutePath());
+            result.putInt("count", encoder.getCount());
+            result.putDouble("size", track.length);
+            promise.resolve(result);
+        });
+    }
+
+    /**
+     * Remove every location of the on-disk history.
+     * @param promise a promise that returns the result to the JS code
+     */
+    @ReactMethod
+    public void clearHistory(final Promise promise) {
+        LocationHistory history = mLocationHistory;
+        if (history == null) {
+            GeolocationError err = GeolocationError.HISTORY_DISABLED;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription());
+            return;
+        }
+        try {
+            history.clear();
+        } catch (IOException e) {
+            GeolocationError err = GeolocationError.HISTORY_FAILURE;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription(), e);
+            return;
+        }
+        mLocationHandler.post(() -> {
+            if (mBufferedLocations != null) {
+                rebuildLocationCellIndex();
+            }
+        });
+        promise.resolve(null);
+    }
+
+    @ReactMethod
+    public void setTemporaryConfiguration(ReadableMap configuration, Promise promise) {
+        try {
+            mCurrentConfiguration = LocationConfiguration.fromReadableMap(configuration);
+        } catch (InvalidConfigurationException e) {
+            promise.reject(String.valueOf(e.getError().getCode()), e.getMessage());
+            return;
+        }
+        configureLocationFilters();
         resetLocationProvider();
         promise.resolve(null);
     }
@@ -175,31 +595,193 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     @ReactMethod
     public void revertTemporaryConfiguration() {
         mCurrentConfiguration = mInitialConfiguration;
+        configureLocationFilters();
         resetLocationProvider();
     }
 
     /**
-     * Update the used location by React to provide the mission list.
-     * This variable is used to know if the user location has significantly changed.
+     * Apply the current configuration to the significant change detector and the emission policy.
+     */
+    private void configureLocationFilters() {
+        mSignificantChangeDetector.configure(mCurrentConfiguration.getSignificantDistance(),
+                mCurrentConfiguration.getSignificantInterval(), mCurrentConfiguration.isAccuracyWeighted());
+        mEmissionPolicy.configure(mCurrentConfiguration.getMinEmitInterval(),
+                mCurrentConfiguration.getMinEmitDistance());
+        mKalmanFilter.configure(mCurrentConfiguration.isSmoothingEnabled(),
+                mCurrentConfiguration.getSmoothingProcessNoise());
+        mLocationFilterChain.configure(mCurrentConfiguration);
+        mAdaptiveSampler.configure(mCurrentConfiguration.isAdaptiveSamplingEnabled());
+        mDiagnostics.setEnabled(mCurrentConfiguration.isDiagnosticsEnabled());
+    }
+
+    /**
+     * Set a native listener notified on the location thread after each location callback, while `diagnosticsEnabled`
+     * is set. The listener reads the counters and histograms from the Diagnostics object.
+     * @param listener listener, null to remove it
+     */
+    public static void setDiagnosticsListener(Diagnostics.Listener listener) {
+        sDiagnosticsListener = listener;
+    }
+
+    /**
+     * Add a native filter applied to the locations after the ones of the configuration, by the module and by the
+     * tracking service. It is called on their location thread, its rejections are counted under its name.
+     * @param filter filter, kept when the configuration changes
+     */
+    public static void addLocationFilter(LocationFilter filter) {
+        sLocationFilters.add(filter);
+    }
+
+    /**
+     * Remove a filter added with addLocationFilter.
+     */
+    public static void removeLocationFilter(LocationFilter filter) {
+        sLocationFilters.remove(filter);
+    }
+
+    /**
+     * @return filters added by the app
+     */
+    static List<LocationFilter> getLocationFilters() {
+        return sLocationFilters;
+    }
+
+    /**
+     * Track the locations in a foreground service, which keeps running without the React instance. The locations it
+     * captures are sent to JS with a LOCATION_BACKLOG event when the app comes back to the foreground.
+     * Calling it again while tracking updates the configuration and the notification of the service.
+     * @param configuration configuration of the service, as the one of configure
+     * @param options `notificationTitle` and `notificationText` of the notification shown while tracking, the optional
+     *                `notificationIcon` name of a drawable of the app, and the `backlogTolerance` in meters of the
+     *                simplification of the backlog, 0 keeps every location
+     * @param promise a promise resolved once the service is started
      */
-    private void updateLastUsedLocation() {
+    @ReactMethod
+    public void startBackgroundTracking(ReadableMap configuration, ReadableMap options, Promise promise) {
+        LocationConfiguration trackingConfiguration;
         try {
-            mLastUsedLocation = mBufferedLocations.getLast();
+            trackingConfiguration = LocationConfiguration.fromReadableMap(configuration);
+        } catch (InvalidConfigurationException e) {
+            promise.reject(String.valueOf(e.getError().getCode()), e.getMessage());
+            return;
         }
-        catch (NoSuchElementException e) {
+        if (!hasType(options, "notificationTitle", ReadableType.String)
+                || !hasType(options, "notificationText", ReadableType.String)
+                || (options.hasKey("notificationIcon") && !options.isNull("notificationIcon")
+                    && !hasType(options, "notificationIcon", ReadableType.String))
+                || (options.hasKey("backlogTolerance") && !options.isNull("backlogTolerance")
+                    && (!hasType(options, "backlogTolerance", ReadableType.Number)
+                        || options.getDouble("backlogTolerance") < 0))) {
+            GeolocationError err = GeolocationError.INVALID_TRACKING_OPTIONS;
+            promise.reject(String.valueOf(err.getCode()), err.getDescription());
             return;
         }
-        String json = GSON.toJson(mLastUsedLocation);
+        float tolerance = hasType(options, "backlogTolerance", ReadableType.Number)
+                ? (float) options.getDouble("backlogTolerance") : 0;
+        /* the backlog may be drained by another instance of the module, once the app is restarted */
         SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(StoreKeys.LAST_USED_LOCATION.name(), json);
+        editor.putFloat(StoreKeys.BACKLOG_TOLERANCE.name(), tolerance);
         editor.apply();
+        String icon = hasType(options, "notificationIcon", ReadableType.String)
+                ? options.getString("notificationIcon") : null;
+        LocationTrackingService.start(mReactContext, trackingConfiguration, options.getString("notificationTitle"),
+                options.getString("notificationText"), icon);
+        promise.resolve(null);
+    }
+
+    /**
+     * Stop the tracking service, its backlog is still sent to JS.
+     */
+    @ReactMethod
+    public void stopBackgroundTracking() {
+        LocationTrackingService.stop(mReactContext);
+        mLocationHandler.post(this::drainBacklog);
     }
 
+    /**
+     * Get the counters and latency histograms of the location pipeline.
+     * Counters of the filters and of the emission policy are always recorded, the other ones only while
+     * `diagnosticsEnabled` is set.
+     * @param promise a promise that returns the diagnostics to the JS code
+     */
+    @ReactMethod
+    public void getDiagnostics(final Promise promise) {
+        WritableMap diagnostics = Arguments.createMap();
+        diagnostics.putBoolean("enabled", mDiagnostics.isEnabled());
+        diagnostics.putDouble("callbacks", mDiagnostics.getCallbackCount());
+        diagnostics.putDouble("fixes", mDiagnostics.getFixCount());
+        diagnostics.putDouble("acceptedFixes", mDiagnostics.getAcceptedFixCount());
+        diagnostics.putDouble("fixesPerMinute", mDiagnostics.getFixesPerMinute());
+        diagnostics.putMap("rejectedFixes", toCountMap(mLocationFilterChain.getRejectedCounts()));
+        diagnostics.putDouble("emittedEvents", mEmissionPolicy.getEmittedCount());
+        diagnostics.putDouble("droppedEvents", mEmissionPolicy.getDroppedCount());
+        diagnostics.putDouble("coalescedEvents", mEmissionPolicy.getCoalescedCount());
+        diagnostics.putDouble("providerRegistrations", mDiagnostics.getRegistrationCount());
+        diagnostics.putDouble("skippedRegistrations", mDiagnostics.getSkippedRegistrationCount());
+        diagnostics.putMap("priorityTimes", toCountMap(mDiagnostics.getPriorityTimes(SystemClock.elapsedRealtime())));
+        diagnostics.putString("motion", mAdaptiveSampler.getMotion().name());
+        diagnostics.putDouble("serializedBytes", mDiagnostics.getSerializedBytes());
+        diagnostics.putDouble("storeWrittenBytes", mDiagnostics.getStoreWrittenBytes());
+        diagnostics.putMap("fixAge", toHistogramMap(mDiagnostics.getFixAges()));
+        diagnostics.putMap("arrivalInterval", toHistogramMap(mDiagnostics.getArrivalIntervals()));
+        diagnostics.putMap("emitLatency", toHistogramMap(mDiagnostics.getEmitLatencies()));
+        diagnostics.putMap("serializationTime", toHistogramMap(mDiagnostics.getSerializationTimes()));
+        diagnostics.putMap("storeWriteTime", toHistogramMap(mDiagnostics.getStoreWriteTimes()));
+        promise.resolve(diagnostics);
+    }
+
+    private static WritableMap toCountMap(Map<String, Long> counts) {
+        WritableMap map = Arguments.createMap();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            map.putDouble(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    private static WritableMap toHistogramMap(Diagnostics.Histogram histogram) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", histogram.getCount());
+        map.putDouble("mean", histogram.getMean());
+        map.putDouble("p50", histogram.getPercentile(50));
+        map.putDouble("p95", histogram.getPercentile(95));
+        map.putDouble("p99", histogram.getPercentile(99));
+        map.putDouble("max", histogram.getMax());
+        return map;
+    }
+
+    /**
+     * Update the used location by React to provide the mission list.
+     * This variable is used to know if the user location has significantly changed.
+     * @param lastLocation new significant location
+     */
+    private void updateLastUsedLocation(MyLocation lastLocation) {
+        long start = mDiagnostics.startTimer();
+        int bytes = mLocationStore.setLastUsedLocation(lastLocation);
+        mDiagnostics.onSerialized(start, bytes);
+    }
+
+    /**
+     * Apply the active profile to the provider on the location thread.
+     * A pending debounced update is replaced, so the latest state wins.
+     */
     private void resetLocationProvider() {
-        stopUpdatingLocation();
+        mLocationHandler.removeCallbacks(mApplyLocationOptions);
+        mLocationHandler.post(mApplyLocationOptions);
+    }
+
+    /**
+     * Apply the active profile to the provider after LIFECYCLE_DEBOUNCE, used when the app goes to the background or
+     * foreground: a pause quickly followed by a resume ends with the request already registered, which is kept.
+     */
+    private void debounceLocationProviderReset() {
+        mLocationHandler.removeCallbacks(mApplyLocationOptions);
+        mLocationHandler.postDelayed(mApplyLocationOptions, LIFECYCLE_DEBOUNCE);
+    }
+
+    private final Runnable mApplyLocationOptions = () -> {
         setLocationOptions();
         startUpdatingLocation();
-    }
+    };
 
     /**
      * Method executed when the app start or go to foreground
@@ -208,8 +790,8 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     public void onHostResume() {
         if (mLocationProvider != null) {
             mInBackground = false;
-            resetLocationProvider();
-
+            debounceLocationProviderReset();
+            mLocationHandler.post(this::drainBacklog);
         }
     }
 
@@ -220,13 +802,19 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     public void onHostPause() {
         /* the pop-up to accept authorization trigger the pause and save an empty buffer */
         if (mBufferedLocations != null && !mBufferedLocations.isEmpty()) {
-            /* save the bufferedLocations in sharedPref */
-            writeBufferInStore();
+            /* save the bufferedLocations in the location log */
+            mLocationHandler.post(this::writeBufferInStore);
         }
 
         /* change options */
         mInBackground = true;
-        resetLocationProvider();
+        if (LocationTrackingService.isRunning()) {
+            /* the service tracks in background, the module would only capture the same locations */
+            mLocationHandler.removeCallbacks(mApplyLocationOptions);
+            mLocationHandler.post(this::stopUpdatingLocation);
+            return;
+        }
+        debounceLocationProviderReset();
     }
 
     /**
@@ -242,6 +830,25 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
       
     }
 
+    /**
+     * Method executed when the React instance is destroyed.
+     */
+    @Override
+    public void invalidate() {
+        mLocationHandler.removeCallbacks(mApplyLocationOptions);
+        /* the pending tasks, and this one, run before the location thread quits */
+        mLocationHandler.post(this::stopUpdatingLocation);
+        mLocationStore.attachBuffer(null);
+        mLocationStore.attachHistory(null);
+        final LocationHistory history = mLocationHistory;
+        if (history != null) {
+            /* closed on the location thread after the pending tasks, which may still append to it */
+            mLocationHandler.post(history::close);
+        }
+        mLocationThread.quitSafely();
+        super.invalidate();
+    }
+
     /**
      * Method executed when `resolvable.startResolutionForResult` is executed.
      * @param activity Activity
@@ -258,18 +865,36 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     /**
      * Set provider options if the app is in background or foreground.
      * Option in background use less battery.
+     * A new request is built, the registered one is never modified.
      */
     private void setLocationOptions() {
+        LocationRequest request = LocationRequest.create();
         if (mInBackground) {
-            mLocationRequest.setPriority(Priority.PRIORITY_LOW_POWER);
-            mLocationRequest.setInterval(60 * 1000);
-            mLocationRequest.setSmallestDisplacement(500);
+            request.setPriority(Priority.PRIORITY_LOW_POWER);
+            request.setInterval(60 * 1000);
+            request.setSmallestDisplacement(500);
         } else {
-            mLocationRequest.setPriority(
-                    LevelAccuracy.PRIORITY_MAP.get(mCurrentConfiguration.getDesiredAccuracy()));
-            mLocationRequest.setInterval(mCurrentConfiguration.getUpdateInterval());
-            mLocationRequest.setSmallestDisplacement(mCurrentConfiguration.getDistanceFilter());
+            request.setPriority(LevelAccuracy.PRIORITY_MAP.get(mCurrentConfiguration.getDesiredAccuracy()));
+            request.setInterval(mCurrentConfiguration.getUpdateInterval());
+            request.setSmallestDisplacement(mCurrentConfiguration.getDistanceFilter());
         }
+        /* adapt the profile to the motion of the user */
+        mAdaptiveSampler.adjust(request);
+        /* with a max wait time greater than the interval, the provider delivers locations by batch */
+        int maxWaitTime = mCurrentConfiguration != null ? mCurrentConfiguration.getMaxWaitTime() : 0;
+        request.setMaxWaitTime(Math.max(maxWaitTime, 0));
+        mLocationRequest = request;
+    }
+
+    /**
+     * @return true if both requests ask the provider for the same updates
+     */
+    private static boolean isSameRequest(LocationRequest request, LocationRequest other) {
+        return request != null && other != null
+                && request.getPriority() == other.getPriority()
+                && request.getInterval() == other.getInterval()
+                && request.getSmallestDisplacement() == other.getSmallestDisplacement()
+                && request.getMaxWaitTime() == other.getMaxWaitTime();
     }
 
     /**
@@ -346,34 +971,109 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
     }
 
     /**
-     * Initiate buffer and lastUpdatedLocation with stored data.
+     * Initiate lastUpdatedLocation with stored data and restore the buffer in background.
+     * Only the last used location is read synchronously, the buffer is restored by the location thread before any
+     * location is delivered by the provider.
      */
     private void getStoredData(){
+        /* Get last used location, parsed once by the store of the process */
+        mLocationStore.getLastUsedLocation();
+        mRestored = false;
+        mLocationHandler.post(this::restoreBuffer);
+    }
+
+    /**
+     * Restore the buffer from the disk and emit an event if the last buffered location is far from the last used one.
+     * Must be called from the location thread.
+     */
+    private void restoreBuffer() {
         /* Get information from disk */
-        String locationListString = mPreferences.getString(StoreKeys.LOCATIONS.name(), "");
+        String locationListString = mPreferences.getString(StoreKeys.LOCATIONS.name(), null);
+        if (locationListString != null) {
+            migrateStoredLocations(locationListString);
+        } else {
+            try {
+                /* the buffer keeps only the newest locations if the buffer size has been reduced */
+                mLocationLog.readInto(mBufferedLocations);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        mRestored = true;
+        rebuildLocationCellIndex();
+        drainBacklog();
+
+        MyLocation lastUsedLocation = mLocationStore.getLastUsedLocation();
+        MyLocation newLocation = mBufferedLocations.getLast();
+        if (lastUsedLocation != null && newLocation != null
+                && mSignificantChangeDetector.isSignificant(lastUsedLocation, newLocation)) {
+            updateLastUsedLocation(newLocation);
+
+            WritableMap body = Arguments.createMap();
+            body.putBoolean("success", true);
+            sendLocationEvent(body);
+        }
+    }
+
+    /**
+     * Open the on-disk history on the location thread.
+     * @param retentionDays number of days during which locations are kept
+     */
+    private void openLocationHistory(int retentionDays) {
+        final LocationHistory history = new LocationHistory(
+                mLocationStore.getLocationHistoryFile(),
+                Math.max(retentionDays, 1) * DAY_IN_MILLISECONDS);
+        mLocationHandler.post(() -> {
+            try {
+                history.open();
+                mLocationHistory = history;
+                mLocationStore.attachHistory(history);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Move the JSON buffer saved in the SharedPreferences by previous versions to the location log.
+     * The JSON array is streamed, locations are added to the buffer one by one.
+     * @param locationListString JSON array of MyLocation objects
+     */
+    private void migrateStoredLocations(String locationListString) {
         if (!NULL_STORE_ARRAY.contains(locationListString)) {
-            mBufferedLocations = GSON.fromJson(
-                    locationListString,
-                    DEQUE_TYPE);
-        }
-        /* Get last used location */
-        String lastUsedLocation = mPreferences.getString(StoreKeys.LAST_USED_LOCATION.name(), "");
-        if (!NULL_STORE_ARRAY.contains(lastUsedLocation)) {
-            mLastUsedLocation = GSON.fromJson(lastUsedLocation, MyLocation.class);
-            MyLocation newLocation = mBufferedLocations.getLast();
-            if (mLastUsedLocation.distanceTo(newLocation.getLatitude(), newLocation.getLongitude()) > 100) {
-                updateLastUsedLocation();
-
-                WritableMap body = Arguments.createMap();
-                body.putBoolean("success", true);
-                mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                        .emit(LOCATION_UPDATED, body);
+            try (JsonReader reader = new JsonReader(new StringReader(locationListString))) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    MyLocation location = LocationStore.GSON.fromJson(reader, MyLocation.class);
+                    mBufferedLocations.add(location);
+                }
+                reader.endArray();
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                /* keep the locations read before the malformed part */
+                e.printStackTrace();
             }
         }
+        try {
+            mLocationLog.rewrite(mBufferedLocations);
+        } catch (IOException e) {
+            /* keep the JSON buffer to retry the migration on next start */
+            e.printStackTrace();
+            return;
+        }
+        SharedPreferences.Editor editor = mPreferences.edit();
+        editor.remove(StoreKeys.LOCATIONS.name());
+        editor.apply();
     }
 
     /**
      * Start the location capture if application has permissions.
+     * The provider is registered again only if the request changed, a new request replaces the previous one of the
+     * callback without removing the updates first.
+     * Must be called from the location thread.
      */
     private void startUpdatingLocation() {
         /* first run the provider may be null */
@@ -396,7 +1096,14 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
              */
             return;
         }
-        mLocationProvider.requestLocationUpdates(mLocationRequest, locationCallback, null);
+        LocationRequest request = mLocationRequest;
+        if (isSameRequest(request, mRegisteredRequest)) {
+            mDiagnostics.onSkippedRegistration();
+            return;
+        }
+        mLocationProvider.requestLocationUpdates(request, locationCallback, mLocationThread.getLooper());
+        mRegisteredRequest = request;
+        mDiagnostics.onRegistration(request.getPriority(), SystemClock.elapsedRealtime());
     }
 
     /**
@@ -408,65 +1115,392 @@ public class MobeyeGeolocationModule extends ReactContextBaseJavaModule implemen
             return;
         }
         mLocationProvider.removeLocationUpdates(locationCallback);
+        mRegisteredRequest = null;
+        mDiagnostics.onRegistration(-1, SystemClock.elapsedRealtime());
     }
 
     /**
-     * Write the buffer in the store.
+     * Append the locations not saved yet to the location log, and compact it when it becomes too large.
+     * Must be called from the location thread.
      */
     private void writeBufferInStore() {
-        String locationListString = GSON.toJson(mBufferedLocations, DEQUE_TYPE);
-        SharedPreferences.Editor editor = mPreferences.edit();
-        editor.putString(StoreKeys.LOCATIONS.name(), locationListString);
-        editor.apply();
+        if (mUnsavedLocations == 0) {
+            return;
+        }
+        long start = mDiagnostics.startTimer();
+        long bytes = (long) Math.min(mUnsavedLocations, mBufferedLocations.size()) * LocationRecord.RECORD_SIZE;
+        try {
+            mLocationLog.append(mBufferedLocations, mUnsavedLocations);
+            mUnsavedLocations = 0;
+            mLocationLog.compactIfNeeded(mBufferedLocations);
+            mDiagnostics.onStoreWritten(start, bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Add a new location in the buffer, the oldest location is overwritten if the buffer is full.
+     * @param location Location object
+     */
+    private void addBufferedLocation(Location location) {
+        addBufferedLocation(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                location.getTime(), location.isFromMockProvider(), location.getProvider());
+    }
+
+    private void addBufferedLocation(double rawLatitude, double rawLongitude, float accuracy, long time,
+                                     boolean mock, String provider) {
+        /* the smoothed coordinates are the raw ones if smoothing is disabled */
+        mKalmanFilter.update(rawLatitude, rawLongitude, accuracy, time);
+        double latitude = mKalmanFilter.getLatitude();
+        double longitude = mKalmanFilter.getLongitude();
+        mBufferedLocations.add(latitude, longitude, rawLatitude, rawLongitude, accuracy, time, mock, provider);
+        mUnsavedLocations++;
+        if (mLocationHistory != null) {
+            try {
+                mLocationHistory.append(latitude, longitude, accuracy, time, mock, provider);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        mLocationCellIndex.add(latitude, longitude, accuracy, time, mock);
+        trimLocationCellIndex();
+    }
+
+    /**
+     * Buffer the locations captured by the tracking service, simplified with the backlog tolerance, and send them
+     * with a LOCATION_BACKLOG event. Locations older than the newest buffered one were also captured by the module.
+     * Must be called from the location thread, once the buffer is restored.
+     */
+    private void drainBacklog() {
+        if (mBufferedLocations == null || !mRestored) {
+            return;
+        }
+        LocationRingBuffer backlog;
+        try {
+            backlog = mLocationStore.drainBacklog();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (backlog == null) {
+            return;
+        }
+        int size = backlog.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        float[] accuracies = new float[size];
+        long[] times = new long[size];
+        boolean[] mocks = new boolean[size];
+        String[] providers = new String[size];
+        size = backlog.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, providers);
+        long newestTime = mBufferedLocations.isEmpty() ? Long.MIN_VALUE : mBufferedLocations.getTime(0);
+        int first = 0;
+        while (first < size && times[first] <= newestTime) {
+            first++;
+        }
+        int[] retained = new int[size - first];
+        int count = TrackSimplifier.simplify(latitudes, longitudes, first, size,
+                mPreferences.getFloat(StoreKeys.BACKLOG_TOLERANCE.name(), 0), retained);
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int index = retained[i];
+            addBufferedLocation(latitudes[index], longitudes[index], accuracies[index], times[index], mocks[index],
+                    providers[index]);
+        }
+        writeBufferInStore();
+
+        WritableMap body = Arguments.createMap();
+        body.putArray("locations", LocationArrays.toPackedArray(latitudes, longitudes, accuracies, times, mocks,
+                retained, count));
+        mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(LOCATION_BACKLOG, body);
+        checkProximity();
+        MyLocation lastUsedLocation = mLocationStore.getLastUsedLocation();
+        MyLocation newLocation = mBufferedLocations.getLast();
+        if (mSignificantChangeDetector.isSignificant(lastUsedLocation, newLocation)) {
+            updateLastUsedLocation(newLocation);
+            WritableMap locationBody = Arguments.createMap();
+            locationBody.putBoolean("success", true);
+            locationBody.putMap("payload", toLocationMap(0));
+            sendLocationEvent(locationBody);
+        }
+    }
+
+    /**
+     * Fill the cell index with the newest locations of the history and with the buffer.
+     * Must be called from the location thread.
+     */
+    private void rebuildLocationCellIndex() {
+        mLocationCellIndex.clear();
+        /* the buffered locations are always indexed */
+        mLocationCellIndex.setMaxSize(Math.max(mBufferedLocations.capacity(), CELL_INDEX_MAX_SIZE));
+        LocationHistory history = mLocationHistory;
+        long lastIndexedTime = Long.MIN_VALUE;
+        if (history != null) {
+            try {
+                history.getLocationsBetween(getCellIndexMinTime(history), Long.MAX_VALUE,
+                        (latitude, longitude, accuracy, time, mock, provider) ->
+                                mLocationCellIndex.add(latitude, longitude, accuracy, time, mock));
+            } catch (IOException e) {
+                e.printStackTrace();
+                mLocationCellIndex.clear();
+            }
+            if (mLocationCellIndex.size() > 0) {
+                lastIndexedTime = mLocationCellIndex.getNewestTime();
+            }
+        }
+        LocationRingBuffer buffer = mBufferedLocations;
+        int size = buffer.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        float[] accuracies = new float[size];
+        long[] times = new long[size];
+        boolean[] mocks = new boolean[size];
+        size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, null);
+        /* the buffered locations are also in the history, unless they were buffered before it was enabled */
+        for (int i = 0; i < size; i++) {
+            if (times[i] > lastIndexedTime) {
+                mLocationCellIndex.add(latitudes[i], longitudes[i], accuracies[i], times[i], mocks[i]);
+            }
+        }
+        trimLocationCellIndex();
+    }
+
+    /**
+     * Remove from the cell index the locations which are neither in the buffer nor in the history.
+     * Must be called from the location thread.
+     */
+    private void trimLocationCellIndex() {
+        LocationHistory history = mLocationHistory;
+        long minTime = history != null ? getCellIndexMinTime(history) : Long.MAX_VALUE;
+        mLocationCellIndex.trim(mBufferedLocations.capacity(), minTime);
+    }
+
+    /**
+     * @return time of the oldest history location kept in the cell index
+     */
+    private static long getCellIndexMinTime(LocationHistory history) {
+        return System.currentTimeMillis() - Math.min(history.getRetention(), CELL_INDEX_WINDOW);
+    }
+
+    /**
+     * Read the history locations computed since a date which are older than the cell index, they have left it or
+     * were never indexed.
+     * Must be called from the location thread.
+     * @param since time in milliseconds, inclusive
+     * @throws IOException if the history can not be read
+     */
+    private void readHistoryBeforeCellIndex(long since, LocationHistory.RecordReader reader) throws IOException {
+        LocationHistory history = mLocationHistory;
+        if (history == null) {
+            return;
+        }
+        long end = mLocationCellIndex.size() > 0 ? mLocationCellIndex.getOldestTime() - 1 : Long.MAX_VALUE;
+        history.getLocationsBetween(since, end, reader);
+    }
+
+    /**
+     * Emit a location event according to the emission policy: the event is dropped, emitted now, or delayed.
+     * A delayed event is replaced by the next delayed one, so only the latest location is emitted, and cancelled by a
+     * dropped one.
+     * Must be called from the location thread.
+     * @param body event to emit
+     * @param location location sent in the event
+     * @param callbackStart value of Diagnostics.startTimer when the location callback started
+     */
+    private void emitLocationEvent(WritableMap body, MyLocation location, long callbackStart) {
+        long now = SystemClock.elapsedRealtime();
+        long delay = mEmissionPolicy.onLocation(location.getLatitude(), location.getLongitude(), now);
+        if (delay == EmissionPolicy.DROP) {
+            /* the user is back near the last emitted location, a delayed older location is not the latest anymore */
+            if (mPendingEvent != null) {
+                mLocationHandler.removeCallbacks(mEmitPendingEvent);
+                mPendingEvent = null;
+                mEmissionPolicy.onCoalesced();
+            }
+            return;
+        }
+        if (mPendingEvent != null) {
+            mEmissionPolicy.onCoalesced();
+        }
+        if (delay == EmissionPolicy.EMIT_NOW) {
+            if (mPendingEvent != null) {
+                mLocationHandler.removeCallbacks(mEmitPendingEvent);
+                mPendingEvent = null;
+            }
+            sendLocationEvent(body);
+            mEmissionPolicy.onEmitted(location.getLatitude(), location.getLongitude(), now);
+            mDiagnostics.onEmitted(callbackStart);
+            return;
+        }
+        if (mPendingEvent == null) {
+            mLocationHandler.postDelayed(mEmitPendingEvent, delay);
+        }
+        mPendingEvent = body;
+        mPendingLatitude = location.getLatitude();
+        mPendingLongitude = location.getLongitude();
+        mPendingCallbackStart = callbackStart;
+    }
+
+    /**
+     * Send a POINT_OF_INTEREST_TRANSITION event if the newest buffered location enters or exits monitored points.
+     * Must be called from the location thread.
+     */
+    private void checkProximity() {
+        LocationRingBuffer buffer = mBufferedLocations;
+        if (mProximityMonitor == null || buffer == null || buffer.isEmpty()) {
+            return;
+        }
+        if (!mProximityMonitor.update(buffer.getLatitude(0), buffer.getLongitude(0))) {
+            return;
+        }
+        PoiIndex index = mProximityMonitor.getIndex();
+        WritableArray transitions = Arguments.createArray();
+        for (int i = 0; i < mProximityMonitor.getExitedCount(); i++) {
+            transitions.pushMap(toTransitionMap(index, mProximityMonitor.getExited(i), "exit"));
+        }
+        for (int i = 0; i < mProximityMonitor.getEnteredCount(); i++) {
+            transitions.pushMap(toTransitionMap(index, mProximityMonitor.getEntered(i), "enter"));
+        }
+        WritableMap body = Arguments.createMap();
+        body.putArray("transitions", transitions);
+        body.putMap("location", toLocationMap(0));
+        mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(POINT_OF_INTEREST_TRANSITION, body);
+    }
+
+    private WritableMap toTransitionMap(PoiIndex index, int point, String transition) {
+        LocationRingBuffer buffer = mBufferedLocations;
+        WritableMap map = Arguments.createMap();
+        map.putString("id", index.getId(point));
+        map.putString("transition", transition);
+        map.putDouble("distance", index.distanceTo(point, buffer.getLatitude(0), buffer.getLongitude(0)));
+        return map;
     }
 
     /**
-     * Add a new location in the buffer and return if the location has changed.
-     * @param location MyLocation object
-     * @return boolean that indicates if the user location has significantly change.
+     * Emit the latest event delayed by the emission policy.
      */
-    private void addBufferedLocation(MyLocation location) {
-        int bufferSize = mInitialConfiguration.getBufferSize();
-        /* while loop to avoid memory leak */
-        while (mBufferedLocations.size() >= bufferSize) {
-            mBufferedLocations.remove();
+    private final Runnable mEmitPendingEvent = () -> {
+        WritableMap body = mPendingEvent;
+        if (body == null) {
+            return;
+        }
+        mPendingEvent = null;
+        sendLocationEvent(body);
+        mEmissionPolicy.onEmitted(mPendingLatitude, mPendingLongitude, SystemClock.elapsedRealtime());
+        mDiagnostics.onEmitted(mPendingCallbackStart);
+    };
+
+    private void sendLocationEvent(WritableMap body) {
+        mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(LOCATION_UPDATED, body);
+    }
+
+    /**
+     * Create the map of a buffered location sent to JS.
+     * The raw coordinates are added if the locations are smoothed.
+     * @param age age of the location in the buffer, 0 is the newest one
+     * @return WritableMap of the location
+     */
+    private WritableMap toLocationMap(int age) {
+        LocationRingBuffer buffer = mBufferedLocations;
+        WritableMap map = MyLocation.toMap(buffer.getLatitude(age), buffer.getLongitude(age),
+                buffer.getAccuracy(age), buffer.getTime(age), buffer.isFromMockProvider(age));
+        if (mKalmanFilter.isEnabled()) {
+            map.putDouble("rawLatitude", buffer.getRawLatitude(age));
+            map.putDouble("rawLongitude", buffer.getRawLongitude(age));
+        }
+        return map;
+    }
+
+    /**
+     * Create the array of a batch of locations sent to JS, ordered from the oldest to the newest location.
+     * Only the `maxBatchSize` newest locations are sent if it is set.
+     * @param count number of locations delivered by the provider, they are the newest buffered ones
+     * @return WritableArray of location maps
+     */
+    private WritableArray toBatchArray(int count) {
+        int maxBatchSize = mCurrentConfiguration.getMaxBatchSize();
+        count = Math.min(count, mBufferedLocations.size());
+        if (maxBatchSize > 0) {
+            count = Math.min(count, maxBatchSize);
+        }
+        WritableArray batch = Arguments.createArray();
+        for (int age = count - 1; age >= 0; age--) {
+            batch.pushMap(toLocationMap(age));
         }
-        mBufferedLocations.add(location);
+        return batch;
     }
 
     /**
      * Callback that transforms detected locations objects as String array and stores it
      * in the buffer.
      * Emits an event if the user location changes significantly.
+     * It runs on the location thread, never on the main looper.
      */
     private LocationCallback locationCallback = new LocationCallback() {
         @Override
         public void onLocationResult(LocationResult locationResult) {
-            if (locationResult == null) {
+            if (locationResult == null || locationResult.getLocations().isEmpty()) {
                 return;
             }
-
-            MyLocation lastLocation = null;
-            /* for now, setMaxWaitTime is not set so locationResult must have only one location */
-            for (Location location : locationResult.getLocations()) {
-                lastLocation = new MyLocation(location);
-                addBufferedLocation(lastLocation);
+            handleLocations(locationResult.getLocations(), mDiagnostics.startTimer());
+            Diagnostics.Listener listener = sDiagnosticsListener;
+            if (listener != null && mDiagnostics.isEnabled()) {
+                listener.onLocationCallback(mDiagnostics);
             }
+        }
+    };
 
-            /* In background the callback is every 500 meters
-             * All background new location must be saved */
-            if (mInBackground) {
-                writeBufferInStore();
+    /**
+     * Buffer the new locations, and notify JS if the last one is a significant change.
+     * Must be called from the location thread.
+     * @param locations locations delivered by the provider, from the oldest to the newest one
+     * @param callbackStart value of Diagnostics.startTimer when the location callback started
+     */
+    private void handleLocations(List<Location> locations, long callbackStart) {
+        /* there are several locations only if the max wait time is set */
+        int accepted = 0;
+        for (Location location : locations) {
+            mDiagnostics.onFix(location.getElapsedRealtimeNanos());
+            /* inaccurate, mock, stale or impossible locations must not evict good ones from the buffer */
+            if (mLocationFilterChain.accept(location)) {
+                addBufferedLocation(location);
+                accepted++;
             }
+        }
+        mDiagnostics.onCallback(locations.size(), accepted);
+        if (accepted == 0) {
+            return;
+        }
+        checkProximity();
+        if (mAdaptiveSampler.update(mBufferedLocations)) {
+            resetLocationProvider();
+        }
 
-            /* update last used location */
-            updateLastUsedLocation();
-            /* Emits event with lastLocation */
-            WritableMap body = Arguments.createMap();
-            body.putBoolean("success", true);
-            body.putMap("payload", lastLocation.toMap());
-            mReactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit(LOCATION_UPDATED, body);
+        /* In background the callback is every 500 meters
+         * All background new location must be saved */
+        if (mInBackground) {
+            writeBufferInStore();
         }
-    };
+
+        /* update last used location and notify JS only if the location has significantly changed */
+        MyLocation newLocation = mBufferedLocations.getLast();
+        if (!mSignificantChangeDetector.isSignificant(mLocationStore.getLastUsedLocation(), newLocation)) {
+            return;
+        }
+        updateLastUsedLocation(newLocation);
+        /* Emits event with lastLocation, and the whole batch if batching is enabled */
+        WritableMap body = Arguments.createMap();
+        body.putBoolean("success", true);
+        body.putMap("payload", toLocationMap(0));
+        if (mCurrentConfiguration.getMaxWaitTime() > 0) {
+            body.putArray("locations", toBatchArray(accepted));
+        }
+        emitLocationEvent(body, newLocation, callbackStart);
+    }
 }
@@ -3,50 +3,222 @@ package com.mobeye.geolocation;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.UriMatcher;
+import android.content.pm.ProviderInfo;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Read-only access to the computed locations for the native parts of the app (widgets, workers...), without JSON
+ * parsing. Three URIs are exposed under the `${applicationId}.provider` authority:
+ * - `last`: the newest buffered location;
+ * - `recent?limit=N`: the N newest buffered locations, every buffered location without limit;
+ * - `range?from=T1&to=T2`: the locations computed between two times in milliseconds (both inclusive), read from the
+ *   on-disk history when it is enabled, from the buffer otherwise.
+ * Rows are ordered from the newest to the oldest location and have the COLUMNS columns.
+ * Cursors are built from the LocationStore: the live buffer of the module, or the location log when the module is not
+ * running in the process, followed by the locations captured by the tracking service since.
+ */
 public class MobeyeGeolocationProvider extends ContentProvider {
+    public static final String PATH_LAST = "last";
+    public static final String PATH_RECENT = "recent";
+    public static final String PATH_RANGE = "range";
+    public static final String PARAMETER_LIMIT = "limit";
+    public static final String PARAMETER_FROM = "from";
+    public static final String PARAMETER_TO = "to";
+
+    public static final String COLUMN_LATITUDE = "latitude";
+    public static final String COLUMN_LONGITUDE = "longitude";
+    public static final String COLUMN_ACCURACY = "accuracy";
+    public static final String COLUMN_TIME = "time";
+    /* 1 if the location comes from a mock provider, 0 otherwise */
+    public static final String COLUMN_MOCK = "mock";
+    public static final String COLUMN_PROVIDER = "provider";
+    public static final String[] COLUMNS = {
+            COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_ACCURACY, COLUMN_TIME, COLUMN_MOCK, COLUMN_PROVIDER,
+    };
+
+    private static final int MATCH_LAST = 1;
+    private static final int MATCH_RECENT = 2;
+    private static final int MATCH_RANGE = 3;
+
+    private final UriMatcher mUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    private String mAuthority;
 
     @Override
     public boolean onCreate() {
-        return false;
+        return true;
+    }
+
+    @Override
+    public void attachInfo(Context context, ProviderInfo info) {
+        super.attachInfo(context, info);
+        mAuthority = info.authority;
+        mUriMatcher.addURI(mAuthority, PATH_LAST, MATCH_LAST);
+        mUriMatcher.addURI(mAuthority, PATH_RECENT, MATCH_RECENT);
+        mUriMatcher.addURI(mAuthority, PATH_RANGE, MATCH_RANGE);
     }
 
     public static String getLastLocation(@NonNull Context context) {
-        return context.getSharedPreferences("com.mobeye.geolocation.sharedpref", Context.MODE_PRIVATE)
-                .getString(StoreKeys.LAST_USED_LOCATION.name(), "");
+        return LocationStore.getInstance(context).getLastUsedLocationJson();
     }
 
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
-        return null;
+        String[] columns = projection != null ? projection : COLUMNS;
+        switch (mUriMatcher.match(uri)) {
+            case MATCH_LAST:
+                return queryBuffer(columns, 1, Long.MIN_VALUE, Long.MAX_VALUE);
+            case MATCH_RECENT:
+                return queryBuffer(columns, readParameter(uri, PARAMETER_LIMIT, Integer.MAX_VALUE), Long.MIN_VALUE,
+                        Long.MAX_VALUE);
+            case MATCH_RANGE:
+                long from = readParameter(uri, PARAMETER_FROM, Long.MIN_VALUE);
+                long to = readParameter(uri, PARAMETER_TO, Long.MAX_VALUE);
+                LocationHistory history = LocationStore.getInstance(getContext()).getHistory();
+                if (history != null) {
+                    return queryHistory(history, columns, from, to);
+                }
+                return queryBuffer(columns, Integer.MAX_VALUE, from, to);
+            default:
+                throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+    }
+
+    /**
+     * Build a cursor of the newest buffered locations computed between two times.
+     * @param limit maximum number of rows
+     */
+    private Cursor queryBuffer(String[] columns, int limit, long from, long to) {
+        LocationRingBuffer buffer = LocationStore.getInstance(getContext()).getBuffer();
+        int size = buffer.capacity();
+        if (from == Long.MIN_VALUE && to == Long.MAX_VALUE) {
+            /* every location matches, only the `limit` newest ones are copied */
+            size = Math.max(0, Math.min(size, limit));
+        }
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        float[] accuracies = new float[size];
+        long[] times = new long[size];
+        boolean[] mocks = new boolean[size];
+        String[] providers = new String[size];
+        /* one synchronized copy, so the rows are consistent while the module keeps buffering */
+        size = buffer.copyLatest(size, latitudes, longitudes, accuracies, times, mocks, providers);
+
+        MatrixCursor cursor = new MatrixCursor(columns, Math.min(size, Math.max(limit, 0)));
+        int count = 0;
+        for (int i = size - 1; i >= 0 && count < limit; i--) {
+            if (times[i] >= from && times[i] <= to) {
+                cursor.addRow(toRow(columns, latitudes[i], longitudes[i], accuracies[i], times[i], mocks[i],
+                        providers[i]));
+                count++;
+            }
+        }
+        return cursor;
+    }
+
+    private Cursor queryHistory(LocationHistory history, String[] columns, long from, long to) {
+        List<Object[]> rows = new ArrayList<>();
+        try {
+            history.getLocationsBetween(from, to,
+                    (latitude, longitude, accuracy, time, mock, provider) ->
+                            rows.add(toRow(columns, latitude, longitude, accuracy, time, mock, provider)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        /* the history is read from the oldest location, rows are expected from the newest one */
+        MatrixCursor cursor = new MatrixCursor(columns, rows.size());
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            cursor.addRow(rows.get(i));
+        }
+        return cursor;
+    }
+
+    /**
+     * @return values of a location in the order of the projection
+     */
+    private static Object[] toRow(String[] columns, double latitude, double longitude, float accuracy, long time,
+                                  boolean mock, String provider) {
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case COLUMN_LATITUDE:
+                    row[i] = latitude;
+                    break;
+                case COLUMN_LONGITUDE:
+                    row[i] = longitude;
+                    break;
+                case COLUMN_ACCURACY:
+                    row[i] = accuracy;
+                    break;
+                case COLUMN_TIME:
+                    row[i] = time;
+                    break;
+                case COLUMN_MOCK:
+                    row[i] = mock ? 1 : 0;
+                    break;
+                case COLUMN_PROVIDER:
+                    row[i] = provider;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column " + columns[i]);
+            }
+        }
+        return row;
+    }
+
+    private static long readParameter(Uri uri, String name, long defaultValue) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter in " + uri);
+        }
+    }
+
+    private static int readParameter(Uri uri, String name, int defaultValue) {
+        return (int) Math.min(readParameter(uri, name, (long) defaultValue), Integer.MAX_VALUE);
     }
 
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
-        return null;
+        switch (mUriMatcher.match(uri)) {
+            case MATCH_LAST:
+                return "vnd.android.cursor.item/vnd." + mAuthority + ".location";
+            case MATCH_RECENT:
+            case MATCH_RANGE:
+                return "vnd.android.cursor.dir/vnd." + mAuthority + ".location";
+            default:
+                return null;
+        }
     }
 
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
-        return null;
+        throw new UnsupportedOperationException("Locations are read-only");
     }
 
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
-        return 0;
+        throw new UnsupportedOperationException("Locations are read-only");
     }
 
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
-        return 0;
+        throw new UnsupportedOperationException("Locations are read-only");
     }
 }
@@ -4,8 +4,14 @@ import android.location.Location;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 public class MyLocation {
 
@@ -20,16 +26,46 @@ public class MyLocation {
         this.mock = l.isFromMockProvider();
     }
 
+    public MyLocation(String provider, double latitude, double longitude, float accuracy, long time, boolean mock) {
+        this.provider = provider;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.time = time;
+        this.mock = mock;
+    }
+
     /**
      * Compute the distance between two points in meters.
      * @param latitude Double
      * @param longitude Double
      * @return Distance between this location and the one specified by latitude and longitude
+     * @deprecated use {@link #distanceTo(double, double)} which does not box its arguments
      */
+    @Deprecated
     public Float distanceTo(Double latitude, Double longitude) {
-        float[] results = new float[1];
-        Location.distanceBetween(this.latitude, this.longitude, latitude, longitude, results);
-        return results[0];
+        return (float) distanceTo(latitude.doubleValue(), longitude.doubleValue());
+    }
+
+    /**
+     * Compute the distance between two points in meters on the WGS84 ellipsoid.
+     * @param latitude latitude in degrees
+     * @param longitude longitude in degrees
+     * @return Distance between this location and the one specified by latitude and longitude
+     */
+    public double distanceTo(double latitude, double longitude) {
+        return Geodesy.distance(this.latitude, this.longitude, latitude, longitude);
+    }
+
+    /**
+     * Compute the distance between two points in meters.
+     * @param latitude latitude in degrees
+     * @param longitude longitude in degrees
+     * @param precision precision of the computation, see Geodesy
+     * @return Distance between this location and the one specified by latitude and longitude
+     */
+    public double distanceTo(double latitude, double longitude, Geodesy.Precision precision) {
+        return Geodesy.distance(this.latitude, this.longitude, latitude, longitude, precision);
     }
 
     public String getProvider() {
@@ -81,12 +117,86 @@ public class MyLocation {
     }
 
     public WritableMap toMap(){
+        return toMap(this.latitude, this.longitude, this.accuracy, this.time, this.mock);
+    }
+
+    /**
+     * Create the map sent to JS from the location fields, without creating a MyLocation object.
+     */
+    public static WritableMap toMap(double latitude, double longitude, float accuracy, long time, boolean mock) {
         WritableMap locationMap = Arguments.createMap();
-        locationMap.putDouble("longitude", this.getLongitude());
-        locationMap.putDouble("latitude", this.getLatitude());
-        locationMap.putDouble("accuracy", this.getAccuracy());
-        locationMap.putDouble("time", this.getTime());
-        locationMap.putBoolean("mock", this.isFromMockProvider());
+        locationMap.putDouble("longitude", longitude);
+        locationMap.putDouble("latitude", latitude);
+        locationMap.putDouble("accuracy", accuracy);
+        locationMap.putDouble("time", time);
+        locationMap.putBoolean("mock", mock);
         return locationMap;
     }
+
+    /**
+     * Streaming Gson adapter, registered in place of the reflective one.
+     * It writes the same JSON as the reflective adapter, so stored locations stay readable by both.
+     */
+    public static final class Adapter extends TypeAdapter<MyLocation> {
+        @Override
+        public void write(JsonWriter out, MyLocation location) throws IOException {
+            if (location == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (location.provider != null) {
+                out.name("provider").value(location.provider);
+            }
+            out.name("longitude").value(location.longitude);
+            out.name("latitude").value(location.latitude);
+            /* a Float is written with its shortest representation, like the reflective adapter */
+            out.name("accuracy").value(Float.valueOf(location.accuracy));
+            out.name("time").value(location.time);
+            out.name("mock").value(location.mock);
+            out.endObject();
+        }
+
+        @Override
+        public MyLocation read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            MyLocation location = new MyLocation();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "provider":
+                        location.provider = in.nextString();
+                        break;
+                    case "longitude":
+                        location.longitude = in.nextDouble();
+                        break;
+                    case "latitude":
+                        location.latitude = in.nextDouble();
+                        break;
+                    case "accuracy":
+                        location.accuracy = (float) in.nextDouble();
+                        break;
+                    case "time":
+                        location.time = in.nextLong();
+                        break;
+                    case "mock":
+                        location.mock = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return location;
+        }
+    }
 }
@@ -0,0 +1,247 @@
+package com.mobeye.geolocation;
+
+import java.util.Arrays;
+
+/**
+ * Immutable spatial index of points of interest, each one with a radius in meters.
+ * Points are bucketed in a grid of square cells in degrees, at least as large as the largest radius, so the points
+ * whose circle contains a location are in the few cells around it. The grid is stored in sorted arrays: a cell is
+ * found by a binary search on its key and its points are a contiguous slice of the point indices.
+ * Queries do not allocate, results are written in arrays given by the caller.
+ */
+public class PoiIndex {
+    /* meters per degree of latitude on a sphere of radius Geodesy.EARTH_RADIUS */
+    private static final double METERS_PER_DEGREE = Math.toRadians(Geodesy.EARTH_RADIUS);
+    /* cells are not smaller than this size in meters, so small radii do not create a huge grid */
+    private static final double MIN_CELL_SIZE = 200;
+    /* the width of a cell never goes below this fraction of its height, near the poles */
+    private static final double MIN_COS_LATITUDE = 0.01;
+
+    private final String[] mIds;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final float[] mRadii;
+    private final float mMaxRadius;
+    private final double mCellSize;
+    /* sorted keys of the non empty cells, the points of cell i are mCellPoints[mCellStarts[i], mCellStarts[i + 1][ */
+    private final long[] mCellKeys;
+    private final int[] mCellStarts;
+    private final int[] mCellPoints;
+    private final int mMinLatitudeCell;
+    private final int mMaxLatitudeCell;
+    private final int mMinLongitudeCell;
+    private final int mMaxLongitudeCell;
+
+    /**
+     * @param ids identifiers of the points
+     * @param latitudes latitudes of the points in degrees
+     * @param longitudes longitudes of the points in degrees
+     * @param radii radii of the points in meters
+     */
+    public PoiIndex(String[] ids, double[] latitudes, double[] longitudes, float[] radii) {
+        mIds = ids;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mRadii = radii;
+        int count = ids.length;
+        float maxRadius = 0;
+        for (float radius : radii) {
+            maxRadius = Math.max(maxRadius, radius);
+        }
+        mMaxRadius = maxRadius;
+        mCellSize = Math.max(maxRadius, MIN_CELL_SIZE) / METERS_PER_DEGREE;
+
+        /* bucket the points: compute the cell of each point, then sort the point indices by cell */
+        long[] keys = new long[count];
+        int minLatitudeCell = Integer.MAX_VALUE;
+        int maxLatitudeCell = Integer.MIN_VALUE;
+        int minLongitudeCell = Integer.MAX_VALUE;
+        int maxLongitudeCell = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int latitudeCell = latitudeCell(latitudes[i]);
+            int longitudeCell = longitudeCell(longitudes[i]);
+            minLatitudeCell = Math.min(minLatitudeCell, latitudeCell);
+            maxLatitudeCell = Math.max(maxLatitudeCell, latitudeCell);
+            minLongitudeCell = Math.min(minLongitudeCell, longitudeCell);
+            maxLongitudeCell = Math.max(maxLongitudeCell, longitudeCell);
+            keys[i] = cellKey(latitudeCell, longitudeCell);
+        }
+        mMinLatitudeCell = minLatitudeCell;
+        mMaxLatitudeCell = maxLatitudeCell;
+        mMinLongitudeCell = minLongitudeCell;
+        mMaxLongitudeCell = maxLongitudeCell;
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        mCellPoints = new int[count];
+        int cellCount = 0;
+        for (int i = 0; i < count; i++) {
+            mCellPoints[i] = order[i];
+            if (i == 0 || keys[order[i]] != keys[order[i - 1]]) {
+                cellCount++;
+            }
+        }
+        mCellKeys = new long[cellCount];
+        mCellStarts = new int[cellCount + 1];
+        int cell = -1;
+        for (int i = 0; i < count; i++) {
+            long key = keys[mCellPoints[i]];
+            if (cell < 0 || mCellKeys[cell] != key) {
+                cell++;
+                mCellKeys[cell] = key;
+                mCellStarts[cell] = i;
+            }
+        }
+        mCellStarts[cellCount] = count;
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    public String getId(int index) {
+        return mIds[index];
+    }
+
+    public float getRadius(int index) {
+        return mRadii[index];
+    }
+
+    /**
+     * @return distance in meters between a location and a point
+     */
+    public double distanceTo(int index, double latitude, double longitude) {
+        return Geodesy.haversine(latitude, longitude, mLatitudes[index], mLongitudes[index]);
+    }
+
+    /**
+     * Find the points whose circle, enlarged by a factor, contains a location.
+     * @param radiusFactor factor applied to the radii, 1 for the exact circles
+     * @param result filled with the indices of the points, its length must be at least size()
+     * @return number of points found
+     */
+    public int findContaining(double latitude, double longitude, double radiusFactor, int[] result) {
+        if (size() == 0) {
+            return 0;
+        }
+        double reach = mMaxRadius * radiusFactor / METERS_PER_DEGREE;
+        int latitudeRange = (int) Math.ceil(reach / mCellSize);
+        int longitudeRange = (int) Math.ceil(reach / (mCellSize * cosLatitude(latitude)));
+        int latitudeCell = latitudeCell(latitude);
+        int longitudeCell = longitudeCell(longitude);
+        int found = 0;
+        for (int i = latitudeCell - latitudeRange; i <= latitudeCell + latitudeRange; i++) {
+            for (int j = longitudeCell - longitudeRange; j <= longitudeCell + longitudeRange; j++) {
+                int cell = Arrays.binarySearch(mCellKeys, cellKey(i, j));
+                if (cell < 0) {
+                    continue;
+                }
+                for (int k = mCellStarts[cell]; k < mCellStarts[cell + 1]; k++) {
+                    int point = mCellPoints[k];
+                    if (distanceTo(point, latitude, longitude) <= mRadii[point] * radiusFactor) {
+                        result[found++] = point;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the nearest points of a location, from the nearest to the farthest one.
+     * Cells are visited ring by ring around the location until the remaining rings can not contain a nearer point.
+     * If the points are too sparse for the rings to be worth it, every point is scanned.
+     * @param number maximum number of points
+     * @param indices filled with the indices of the points, its length must be at least `number`
+     * @param distances filled with the distances in meters of the points, its length must be at least `number`
+     * @return number of points found
+     */
+    public int findNearest(double latitude, double longitude, int number, int[] indices, double[] distances) {
+        number = Math.min(number, size());
+        if (number <= 0) {
+            return 0;
+        }
+        int latitudeCell = latitudeCell(latitude);
+        int longitudeCell = longitudeCell(longitude);
+        double cellMeters = mCellSize * METERS_PER_DEGREE * cosLatitude(latitude);
+        int maxRing = Math.max(
+                Math.max(Math.abs(latitudeCell - mMinLatitudeCell), Math.abs(latitudeCell - mMaxLatitudeCell)),
+                Math.max(Math.abs(longitudeCell - mMinLongitudeCell), Math.abs(longitudeCell - mMaxLongitudeCell)));
+        int found = 0;
+        int visitedCells = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            /* the location may be anywhere in its cell, points of this ring and the next ones are at least this far */
+            if (found == number && distances[found - 1] <= (ring - 1) * cellMeters) {
+                return found;
+            }
+            visitedCells += ring == 0 ? 1 : 8 * ring;
+            if (visitedCells > size()) {
+                return scanNearest(latitude, longitude, number, indices, distances);
+            }
+            for (int i = latitudeCell - ring; i <= latitudeCell + ring; i++) {
+                boolean edge = i == latitudeCell - ring || i == latitudeCell + ring;
+                /* inside the ring, only its left and right cells are visited */
+                int step = edge ? 1 : Math.max(2 * ring, 1);
+                for (int j = longitudeCell - ring; j <= longitudeCell + ring; j += step) {
+                    int cell = Arrays.binarySearch(mCellKeys, cellKey(i, j));
+                    if (cell < 0) {
+                        continue;
+                    }
+                    for (int k = mCellStarts[cell]; k < mCellStarts[cell + 1]; k++) {
+                        int point = mCellPoints[k];
+                        found = insertNearest(point, distanceTo(point, latitude, longitude), number, found, indices,
+                                distances);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int scanNearest(double latitude, double longitude, int number, int[] indices, double[] distances) {
+        int found = 0;
+        for (int point = 0; point < size(); point++) {
+            found = insertNearest(point, distanceTo(point, latitude, longitude), number, found, indices, distances);
+        }
+        return found;
+    }
+
+    /**
+     * Insert a point in the sorted arrays of the nearest points, the farthest one is dropped if they are full.
+     * @return new number of points in the arrays
+     */
+    private static int insertNearest(int point, double distance, int number, int found, int[] indices,
+                                     double[] distances) {
+        if (found == number && distance >= distances[found - 1]) {
+            return found;
+        }
+        int position = found == number ? found - 1 : found;
+        while (position > 0 && distances[position - 1] > distance) {
+            indices[position] = indices[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        indices[position] = point;
+        distances[position] = distance;
+        return Math.min(found + 1, number);
+    }
+
+    private int latitudeCell(double latitude) {
+        return (int) Math.floor(latitude / mCellSize);
+    }
+
+    private int longitudeCell(double longitude) {
+        return (int) Math.floor(longitude / mCellSize);
+    }
+
+    private static double cosLatitude(double latitude) {
+        return Math.max(Math.cos(Math.toRadians(latitude)), MIN_COS_LATITUDE);
+    }
+
+    private static long cellKey(int latitudeCell, int longitudeCell) {
+        return ((long) latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mobeye.geolocation;
+
+/**
+ * Track the points of interest of an index containing the user, and detect when the user enters or exits them.
+ * A point is entered when the location is inside its circle, and exited when the location is farther than its radius
+ * enlarged by EXIT_FACTOR, so a location jittering around the border does not produce a transition at each fix.
+ * Only used from the location thread.
+ */
+public class ProximityMonitor {
+    private static final double EXIT_FACTOR = 1.1;
+
+    private final PoiIndex mIndex;
+    private final boolean[] mInside;
+    private final int[] mInsidePoints;
+    private int mInsideCount = 0;
+    private final int[] mFound;
+    private final int[] mEntered;
+    private int mEnteredCount = 0;
+    private final int[] mExited;
+    private int mExitedCount = 0;
+
+    public ProximityMonitor(PoiIndex index) {
+        mIndex = index;
+        mInside = new boolean[index.size()];
+        mInsidePoints = new int[index.size()];
+        mFound = new int[index.size()];
+        mEntered = new int[index.size()];
+        mExited = new int[index.size()];
+    }
+
+    public PoiIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Compute the transitions for a new location, they are then read with getEntered and getExited.
+     * @return true if a point was entered or exited
+     */
+    public boolean update(double latitude, double longitude) {
+        mEnteredCount = 0;
+        mExitedCount = 0;
+        int kept = 0;
+        for (int i = 0; i < mInsideCount; i++) {
+            int point = mInsidePoints[i];
+            if (mIndex.distanceTo(point, latitude, longitude) <= mIndex.getRadius(point) * EXIT_FACTOR) {
+                mInsidePoints[kept++] = point;
+            } else {
+                mInside[point] = false;
+                mExited[mExitedCount++] = point;
+            }
+        }
+        mInsideCount = kept;
+
+        int found = mIndex.findContaining(latitude, longitude, 1, mFound);
+        for (int i = 0; i < found; i++) {
+            int point = mFound[i];
+            if (!mInside[point]) {
+                mInside[point] = true;
+                mInsidePoints[mInsideCount++] = point;
+                mEntered[mEnteredCount++] = point;
+            }
+        }
+        return mEnteredCount > 0 || mExitedCount > 0;
+    }
+
+    public int getEnteredCount() {
+        return mEnteredCount;
+    }
+
+    /**
+     * @return index of the i-th entered point of the last update
+     */
+    public int getEntered(int i) {
+        return mEntered[i];
+    }
+
+    public int getExitedCount() {
+        return mExitedCount;
+    }
+
+    /**
+     * @return index of the i-th exited point of the last update
+     */
+    public int getExited(int i) {
+        return mExited[i];
+    }
+}
@@ -0,0 +1,49 @@
+package com.mobeye.geolocation;
+
+/**
+ * Decide if a new location is a significant change compared to the last used location.
+ * A significant location is persisted as the last used location and notified to JS.
+ * A location is significant if it is farther than `significantDistance` from the last used location, or if the last
+ * used location is older than `significantInterval`. When `accuracyWeighted` is set, a move smaller than the sum of
+ * the accuracy radii of both locations is considered as GPS jitter.
+ * Methods are synchronized: the configuration is changed from the JS thread while locations arrive on the location
+ * thread.
+ */
+public class SignificantChangeDetector {
+    private float mSignificantDistance = 0;
+    private long mSignificantInterval = 0;
+    private boolean mAccuracyWeighted = false;
+
+    /**
+     * @param significantDistance minimum distance in meters of a significant move
+     * @param significantInterval maximum age in milliseconds of the last used location, 0 to disable
+     * @param accuracyWeighted ignore moves smaller than the combined accuracy radii
+     */
+    public synchronized void configure(float significantDistance, long significantInterval,
+                                       boolean accuracyWeighted) {
+        mSignificantDistance = Math.max(significantDistance, 0);
+        mSignificantInterval = Math.max(significantInterval, 0);
+        mAccuracyWeighted = accuracyWeighted;
+    }
+
+    /**
+     * @param lastUsed last used location, may be null
+     * @param location new location
+     * @return true if the new location is a significant change.
+     */
+    public synchronized boolean isSignificant(MyLocation lastUsed, MyLocation location) {
+        if (lastUsed == null) {
+            return true;
+        }
+        if (mSignificantInterval > 0 && location.getTime() - lastUsed.getTime() >= mSignificantInterval) {
+            return true;
+        }
+        float threshold = mSignificantDistance;
+        if (mAccuracyWeighted) {
+            threshold = Math.max(threshold, lastUsed.getAccuracy() + location.getAccuracy());
+        }
+        /* thresholds are tens of meters, the haversine precision is enough */
+        return Geodesy.haversine(lastUsed.getLatitude(), lastUsed.getLongitude(),
+                location.getLatitude(), location.getLongitude()) > threshold;
+    }
+}
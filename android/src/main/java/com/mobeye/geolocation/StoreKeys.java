@@ -2,5 +2,8 @@ package com.mobeye.geolocation;
 
 public enum StoreKeys {
     LAST_USED_LOCATION,
+    /* legacy JSON buffer, migrated to the binary LocationLog */
     LOCATIONS,
+    /* tolerance in meters of the simplification of the backlog of the tracking service */
+    BACKLOG_TOLERANCE,
 }
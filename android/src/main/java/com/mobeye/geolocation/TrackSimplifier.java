@@ -0,0 +1,96 @@
+package com.mobeye.geolocation;
+
+/**
+ * Douglas-Peucker simplification of a track given by its latitude and longitude columns.
+ * The recursion is replaced by an explicit stack of segments, so long tracks can not overflow the thread stack, and
+ * the only allocations are the projected coordinates and the stack.
+ * Points are projected on a plane around the first point of the track: tolerances are a few meters and tracks a few
+ * kilometers, the projection error is negligible.
+ */
+public final class TrackSimplifier {
+
+    private TrackSimplifier() {}
+
+    /**
+     * Simplify the track formed by the points [from, to[ of the columns.
+     * The first and last points are always retained.
+     * @param tolerance maximum distance in meters between a removed point and the simplified track
+     * @param retained filled with the indices of the retained points in increasing order, its length must be at
+     *                 least `to - from`
+     * @return number of retained points
+     */
+    public static int simplify(double[] latitudes, double[] longitudes, int from, int to, double tolerance,
+                               int[] retained) {
+        int count = to - from;
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) {
+                retained[i] = from + i;
+            }
+            return Math.max(count, 0);
+        }
+
+        /* equirectangular projection in meters around the first point */
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double cosLatitude = Math.cos(Math.toRadians(latitudes[from]));
+        for (int i = 0; i < count; i++) {
+            x[i] = Math.toRadians(longitudes[from + i] - longitudes[from]) * cosLatitude * Geodesy.EARTH_RADIUS;
+            y[i] = Math.toRadians(latitudes[from + i] - latitudes[from]) * Geodesy.EARTH_RADIUS;
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        /* each pending segment is a pair of indices, a segment is split in two at most once per point */
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        double squaredTolerance = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredSegmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > squaredTolerance) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int retainedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                retained[retainedCount++] = from + i;
+            }
+        }
+        return retainedCount;
+    }
+
+    /**
+     * Squared distance between the point p and the segment [a, b].
+     */
+    private static double squaredSegmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double squaredLength = dx * dx + dy * dy;
+        double t = 0;
+        if (squaredLength > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / squaredLength;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+/**
+ * Base class of the module on the new architecture: a TurboModule implementing the spec generated by codegen from
+ * src/NativeMobeyeGeolocation.ts.
+ */
+abstract class MobeyeGeolocationSpec extends NativeMobeyeGeolocationSpec {
+    MobeyeGeolocationSpec(ReactApplicationContext context) {
+        super(context);
+    }
+}
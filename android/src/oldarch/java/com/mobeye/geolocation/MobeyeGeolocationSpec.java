@@ -0,0 +1,13 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+
+/**
+ * Base class of the module on the old architecture: a bridge module, methods are exposed with @ReactMethod.
+ */
+abstract class MobeyeGeolocationSpec extends ReactContextBaseJavaModule {
+    MobeyeGeolocationSpec(ReactApplicationContext context) {
+        super(context);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mobeye.geolocation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeodesyTest {
+    /* documented bounds of the approximations, relative to the exact distance */
+    private static final double HAVERSINE_ERROR = 0.006;
+    private static final double EQUIRECTANGULAR_ERROR = 0.006;
+    private static final double EQUIRECTANGULAR_MAX_DISTANCE = 10000;
+
+    private static final double[] LATITUDES = {0, 15, -30, 45, -60, 75, 85};
+    private static final double[] DISTANCES = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final double[] BEARINGS = {0, 45, 90, 135};
+
+    @Test
+    public void vincentyMatchesReferenceDistance() {
+        /* Flinders Peak to Buninyong, the example of Vincenty's paper */
+        double distance = Geodesy.vincenty(-37.9510334167, 144.4248678889, -37.6528211389, 143.9264955278);
+        assertEquals(54972.271, distance, 0.01);
+    }
+
+    @Test
+    public void distanceIsZeroForSamePoint() {
+        assertEquals(0, Geodesy.vincenty(48.85, 2.35, 48.85, 2.35), 0);
+        assertEquals(0, Geodesy.haversine(48.85, 2.35, 48.85, 2.35), 0);
+        assertEquals(0, Geodesy.equirectangular(48.85, 2.35, 48.85, 2.35), 0);
+    }
+
+    @Test
+    public void haversineIsWithinBoundOfVincenty() {
+        for (double latitude : LATITUDES) {
+            for (double distance : DISTANCES) {
+                for (double bearing : BEARINGS) {
+                    double[] destination = destination(latitude, 2.35, distance, bearing);
+                    assertRelativeError(Geodesy.vincenty(latitude, 2.35, destination[0], destination[1]),
+                            Geodesy.haversine(latitude, 2.35, destination[0], destination[1]), HAVERSINE_ERROR);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void equirectangularIsWithinBoundOfVincentyBelowTenKilometers() {
+        for (double latitude : LATITUDES) {
+            for (double distance : DISTANCES) {
+                if (distance > EQUIRECTANGULAR_MAX_DISTANCE) {
+                    continue;
+                }
+                for (double bearing : BEARINGS) {
+                    double[] destination = destination(latitude, 2.35, distance, bearing);
+                    assertRelativeError(Geodesy.vincenty(latitude, 2.35, destination[0], destination[1]),
+                            Geodesy.equirectangular(latitude, 2.35, destination[0], destination[1]),
+                            EQUIRECTANGULAR_ERROR);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void equirectangularTakesTheShortestWayAroundTheAntimeridian() {
+        double exact = Geodesy.vincenty(10, 179.99, 10, -179.99);
+        assertRelativeError(exact, Geodesy.equirectangular(10, 179.99, 10, -179.99), EQUIRECTANGULAR_ERROR);
+        assertRelativeError(exact, Geodesy.haversine(10, 179.99, 10, -179.99), HAVERSINE_ERROR);
+    }
+
+    @Test
+    public void haversineIsWithinBoundOfVincentyNearAntipodalPoints() {
+        double[][] points = {
+                {0, 0, 0.5, 179.5},
+                {10, 20, -10.2, -160.3},
+                {45, 0, -44.9, 179.9},
+                {-60, 30, 59.8, -150.1},
+        };
+        for (double[] p : points) {
+            double exact = Geodesy.vincenty(p[0], p[1], p[2], p[3]);
+            /* even without convergence, the estimate stays below half a meridian */
+            assertTrue(exact > 19000000 && exact < 20004000);
+            assertRelativeError(exact, Geodesy.haversine(p[0], p[1], p[2], p[3]), HAVERSINE_ERROR);
+        }
+    }
+
+    @Test
+    public void distanceUsesTheGivenPrecision() {
+        assertEquals(Geodesy.vincenty(48.85, 2.35, 45.76, 4.83), Geodesy.distance(48.85, 2.35, 45.76, 4.83), 0);
+        assertEquals(Geodesy.haversine(48.85, 2.35, 45.76, 4.83),
+                Geodesy.distance(48.85, 2.35, 45.76, 4.83, Geodesy.Precision.HAVERSINE), 0);
+        assertEquals(Geodesy.equirectangular(48.85, 2.35, 45.76, 4.83),
+                Geodesy.distance(48.85, 2.35, 45.76, 4.83, Geodesy.Precision.EQUIRECTANGULAR), 0);
+    }
+
+    private static void assertRelativeError(double expected, double actual, double error) {
+        assertEquals(expected, actual, expected * error);
+    }
+
+    /**
+     * Point at a distance and a bearing from a start point on the sphere.
+     * @return latitude and longitude in degrees
+     */
+    private static double[] destination(double latitude, double longitude, double distance, double bearing) {
+        double phi = Math.toRadians(latitude);
+        double theta = Math.toRadians(bearing);
+        double delta = distance / Geodesy.EARTH_RADIUS;
+        double phi2 = Math.asin(Math.sin(phi) * Math.cos(delta) + Math.cos(phi) * Math.sin(delta) * Math.cos(theta));
+        double lambda = Math.atan2(Math.sin(theta) * Math.sin(delta) * Math.cos(phi),
+                Math.cos(delta) - Math.sin(phi) * Math.sin(phi2));
+        return new double[] {Math.toDegrees(phi2), longitude + Math.toDegrees(lambda)};
+    }
+}
@@ -0,0 +1,96 @@
+package com.mobeye.geolocation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationCellIndexTest {
+    @Test
+    public void findsLocationsNearPoint() {
+        LocationCellIndex index = new LocationCellIndex();
+        index.add(48.8584, 2.2945, 5, 1000, false);
+        index.add(48.8606, 2.3376, 5, 2000, false);
+        index.add(48.8585, 2.2946, 5, 3000, true);
+
+        int[] slots = index.findNear(48.8584, 2.2945, 50, 0);
+
+        assertEquals(2, slots.length);
+        assertEquals(1000, index.getTimes()[slots[0]]);
+        assertEquals(3000, index.getTimes()[slots[1]]);
+        assertEquals(1, index.findNear(48.8584, 2.2945, 50, 2000).length);
+    }
+
+    @Test
+    public void findsLocationsAcrossTheAntimeridian() {
+        LocationCellIndex index = new LocationCellIndex();
+        index.add(-16.5, 179.9999, 5, 1000, false);
+        index.add(-16.5, -179.9999, 5, 2000, false);
+
+        assertEquals(2, index.findNear(-16.5, 180, 100, 0).length);
+    }
+
+    @Test
+    public void keepsAtMostMaxSizeLocations() {
+        LocationCellIndex index = new LocationCellIndex();
+        index.setMaxSize(100);
+        for (int i = 0; i < 1000; i++) {
+            index.add(45 + i * 1e-3, 5, 5, i, false);
+        }
+
+        assertEquals(100, index.size());
+        assertEquals(900, index.getOldestTime());
+        assertEquals(999, index.getNewestTime());
+        /* the removed locations have left their cells */
+        assertEquals(0, index.findNear(45, 5, 10, 0).length);
+        assertEquals(index.getVisitedCells(0).size(), index.getCellCount());
+    }
+
+    @Test
+    public void trimsOldLocations() {
+        LocationCellIndex index = new LocationCellIndex();
+        for (int i = 0; i < 10; i++) {
+            index.add(45, 5, 5, 1000L * i, false);
+        }
+
+        index.trim(3, 5000);
+
+        assertEquals(5, index.size());
+        assertEquals(5000, index.getOldestTime());
+        index.trim(3, Long.MAX_VALUE);
+        assertEquals(3, index.size());
+        assertEquals(1, index.getCellCount());
+    }
+
+    @Test
+    public void visitedCellsMatchIndexedLocations() {
+        Random random = new Random(7);
+        LocationCellIndex index = new LocationCellIndex();
+        index.setMaxSize(5000);
+        List<double[]> locations = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            /* a few thousand cells, so the cell map grows and removes many keys */
+            double[] location = {48 + random.nextDouble() * 0.2, 2 + random.nextDouble() * 0.2};
+            locations.add(location);
+            index.add(location[0], location[1], 5, i, false);
+        }
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 15000; i < 20000; i++) {
+            expected.add(LocationCellIndex.geohash(locations.get(i)[0], locations.get(i)[1]));
+        }
+        Set<String> visited = new HashSet<>(index.getVisitedCells(0));
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), index.getCellCount());
+        for (int i = 15000; i < 20000; i += 250) {
+            double[] location = locations.get(i);
+            assertTrue(index.findNear(location[0], location[1], 1, 0).length >= 1);
+        }
+    }
+}
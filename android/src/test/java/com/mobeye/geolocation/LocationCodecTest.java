@@ -0,0 +1,213 @@
+package com.mobeye.geolocation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class LocationCodecTest {
+    private static final double COORDINATE_ERROR = 1e-7;
+    private static final double ACCURACY_ERROR = 0.05;
+
+    @Test
+    public void roundTripsTrack() throws IOException {
+        Random random = new Random(42);
+        Track track = new Track(500);
+        double latitude = 48.85;
+        double longitude = 2.35;
+        long time = 1700000000000L;
+        String[] providers = {"gps", "network", "fused", "passive", null};
+        for (int i = 0; i < track.size; i++) {
+            latitude += (random.nextDouble() - 0.5) * 1e-3;
+            longitude += (random.nextDouble() - 0.5) * 1e-3;
+            time += 1000 + random.nextInt(5000);
+            track.set(i, latitude, longitude, random.nextFloat() * 50, time, random.nextInt(10) == 0,
+                    providers[random.nextInt(providers.length)]);
+        }
+
+        Track decoded = roundTrip(track, 0, track.size);
+
+        assertTrack(track, 0, decoded);
+    }
+
+    @Test
+    public void roundTripsRange() throws IOException {
+        Track track = new Track(10);
+        for (int i = 0; i < track.size; i++) {
+            track.set(i, 45 + i * 1e-4, 5 - i * 1e-4, 10 + i, 1000L * i, false, "fused");
+        }
+
+        Track decoded = roundTrip(track, 3, 7);
+
+        assertEquals(4, decoded.size);
+        assertTrack(track, 3, decoded);
+    }
+
+    @Test
+    public void encoderGrowsToTheSameTrackAsEncode() {
+        Track track = new Track(1000);
+        for (int i = 0; i < track.size; i++) {
+            track.set(i, -33.86 + i * 1e-5, 151.2 + i * 2e-5, 4.5f, 1000L * i, false, "gps");
+        }
+        /* far smaller than the track, so every column grows */
+        LocationCodec.Encoder encoder = new LocationCodec.Encoder(1);
+        for (int i = 0; i < track.size; i++) {
+            encoder.read(track.latitudes[i], track.longitudes[i], track.accuracies[i], track.times[i],
+                    track.mocks[i], track.providers[i]);
+        }
+
+        assertEquals(track.size, encoder.getCount());
+        assertArrayEquals(encode(track, 0, track.size), encoder.toByteArray());
+    }
+
+    @Test
+    public void roundTripsEmptyTrack() throws IOException {
+        Track track = new Track(0);
+
+        byte[] bytes = encode(track, 0, 0);
+
+        assertEquals(LocationCodec.FORMAT_VERSION, bytes[0]);
+        assertEquals(0, roundTrip(track, 0, 0).size);
+        /* an inverted range is an empty track */
+        assertEquals(0, LocationCodec.decode(encode(track, 3, 1), new Track(0)));
+    }
+
+    @Test
+    public void roundTripsNegativeDeltasAcrossTheAntimeridian() throws IOException {
+        Track track = new Track(4);
+        track.set(0, -16.5, 179.9999, 5, 3000, false, "gps");
+        track.set(1, -16.6, -179.9999, 5, 2000, false, "gps");
+        track.set(2, -90, 180, 5, 1000, false, "gps");
+        track.set(3, 90, -180, 5, -1000, false, "gps");
+
+        Track decoded = roundTrip(track, 0, track.size);
+
+        assertTrack(track, 0, decoded);
+    }
+
+    @Test
+    public void roundTripsNanAndHugeAccuracies() throws IOException {
+        Track track = new Track(4);
+        track.set(0, 1, 1, Float.NaN, 1, false, "gps");
+        track.set(1, 1, 1, 1e7f, 2, false, "gps");
+        track.set(2, 1, 1, Float.MAX_VALUE, 3, true, "gps");
+        track.set(3, 1, 1, -1, 4, false, "gps");
+
+        Track decoded = roundTrip(track, 0, track.size);
+
+        /* NaN and negative accuracies are written as 0, the largest ones are clamped */
+        assertEquals(0, decoded.accuracies[0], 0);
+        assertEquals(1e7f, decoded.accuracies[1], ACCURACY_ERROR);
+        assertTrue(decoded.accuracies[2] > 1e17);
+        assertEquals(0, decoded.accuracies[3], 0);
+        /* the other columns are not shifted by the long varints */
+        assertEquals(4, decoded.times[3]);
+        assertTrue(decoded.mocks[2]);
+        assertFalse(decoded.mocks[3]);
+    }
+
+    @Test
+    public void rejectsTruncatedTrack() throws IOException {
+        Track track = new Track(20);
+        for (int i = 0; i < track.size; i++) {
+            track.set(i, 10 + i, 20 - i, i, 100L * i, i % 2 == 0, "network");
+        }
+        byte[] bytes = encode(track, 0, track.size);
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IOException.class, () -> LocationCodec.decode(truncated, new Track(0)));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownVersion() throws IOException {
+        Track track = new Track(1);
+        track.set(0, 1, 2, 3, 4, false, "gps");
+        byte[] bytes = encode(track, 0, 1);
+        bytes[0] = (byte) (LocationCodec.FORMAT_VERSION + 1);
+
+        assertThrows(IOException.class, () -> LocationCodec.decode(bytes, new Track(0)));
+    }
+
+    @Test
+    public void rejectsInvalidCount() {
+        /* a count of 100 locations in 3 bytes */
+        byte[] bytes = {(byte) LocationCodec.FORMAT_VERSION, 100, 0};
+
+        assertThrows(IOException.class, () -> LocationCodec.decode(bytes, new Track(0)));
+    }
+
+    private static byte[] encode(Track track, int from, int to) {
+        return LocationCodec.encode(track.latitudes, track.longitudes, track.accuracies, track.times, track.mocks,
+                track.providers, from, to);
+    }
+
+    private static Track roundTrip(Track track, int from, int to) throws IOException {
+        Track decoded = new Track(Math.max(to - from, 0));
+        int count = LocationCodec.decode(encode(track, from, to), decoded);
+        assertEquals(decoded.size, count);
+        return decoded;
+    }
+
+    private static void assertTrack(Track expected, int from, Track actual) {
+        for (int i = 0; i < actual.size; i++) {
+            assertEquals(expected.latitudes[from + i], actual.latitudes[i], COORDINATE_ERROR);
+            assertEquals(expected.longitudes[from + i], actual.longitudes[i], COORDINATE_ERROR);
+            assertEquals(expected.accuracies[from + i], actual.accuracies[i], ACCURACY_ERROR);
+            assertEquals(expected.times[from + i], actual.times[i]);
+            assertEquals(expected.mocks[from + i], actual.mocks[i]);
+            assertEquals(expected.providers[from + i], actual.providers[i]);
+        }
+    }
+
+    /**
+     * Columns of a track, filled by the decoder.
+     */
+    private static class Track implements LocationHistory.RecordReader {
+        final int size;
+        final double[] latitudes;
+        final double[] longitudes;
+        final float[] accuracies;
+        final long[] times;
+        final boolean[] mocks;
+        final String[] providers;
+        private int mRead = 0;
+
+        Track(int size) {
+            this.size = size;
+            latitudes = new double[size];
+            longitudes = new double[size];
+            accuracies = new float[size];
+            times = new long[size];
+            mocks = new boolean[size];
+            providers = new String[size];
+        }
+
+        void set(int i, double latitude, double longitude, float accuracy, long time, boolean mock, String provider) {
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            accuracies[i] = accuracy;
+            times[i] = time;
+            mocks[i] = mock;
+            providers[i] = provider;
+        }
+
+        @Override
+        public void read(double latitude, double longitude, float accuracy, long time, boolean mock,
+                         String provider) {
+            /* locations beyond the expected size are ignored, the decoded count is checked instead */
+            if (mRead < size) {
+                set(mRead, latitude, longitude, accuracy, time, mock, provider);
+            }
+            mRead++;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mobeye.geolocation;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class LocationConfigurationTest {
+    @Test
+    public void missingFieldsTakeTheDefaultValues() throws InvalidConfigurationException {
+        LocationConfiguration configuration = LocationConfiguration.fromReadableMap(requiredFields());
+
+        assertEquals(500, configuration.getDistanceFilter());
+        assertEquals(5000, configuration.getUpdateInterval());
+        assertEquals(100, configuration.getSignificantDistance());
+        assertEquals(7, configuration.getHistoryRetentionDays());
+        assertEquals(3, configuration.getSmoothingProcessNoise(), 0);
+        assertEquals(0, configuration.getMaxAccuracy());
+    }
+
+    @Test
+    public void readsFractionalProcessNoise() throws InvalidConfigurationException {
+        JavaOnlyMap map = requiredFields();
+        map.putBoolean("smoothingEnabled", true);
+        map.putDouble("smoothingProcessNoise", 0.5);
+
+        assertEquals(0.5, LocationConfiguration.fromReadableMap(map).getSmoothingProcessNoise(), 0);
+    }
+
+    @Test
+    public void rejectsNonPositiveProcessNoiseWhenSmoothing() {
+        JavaOnlyMap map = requiredFields();
+        map.putBoolean("smoothingEnabled", true);
+        map.putDouble("smoothingProcessNoise", 0);
+
+        assertThrows(InvalidConfigurationException.class, () -> LocationConfiguration.fromReadableMap(map));
+        map.putDouble("smoothingProcessNoise", Double.NaN);
+        assertThrows(InvalidConfigurationException.class, () -> LocationConfiguration.fromReadableMap(map));
+    }
+
+    @Test
+    public void rejectsValuesBelowTheMinimum() {
+        JavaOnlyMap map = requiredFields();
+        map.putBoolean("historyEnabled", true);
+        map.putDouble("historyRetentionDays", 0);
+
+        assertThrows(InvalidConfigurationException.class, () -> LocationConfiguration.fromReadableMap(map));
+        map.putDouble("historyRetentionDays", 1.5);
+        assertThrows(InvalidConfigurationException.class, () -> LocationConfiguration.fromReadableMap(map));
+    }
+
+    @Test
+    public void rejectsMissingBufferSize() {
+        JavaOnlyMap map = new JavaOnlyMap();
+        map.putString("desiredAccuracy", "BalancedPower");
+
+        InvalidConfigurationException e = assertThrows(InvalidConfigurationException.class,
+                () -> LocationConfiguration.fromReadableMap(map));
+        assertEquals(GeolocationError.INVALID_BUFFER_SIZE, e.getError());
+    }
+
+    private static JavaOnlyMap requiredFields() {
+        JavaOnlyMap map = new JavaOnlyMap();
+        map.putString("desiredAccuracy", "BalancedPower");
+        map.putDouble("bufferSize", 10);
+        return map;
+    }
+}
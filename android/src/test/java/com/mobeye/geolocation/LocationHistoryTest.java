@@ -0,0 +1,150 @@
+package com.mobeye.geolocation;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LocationHistoryTest {
+    private static final long DAY_IN_MILLISECONDS = 24 * 60 * 60 * 1000L;
+    private static final LocationHistory.RecordReader IGNORE =
+            (latitude, longitude, accuracy, time, mock, provider) -> { };
+
+    @Test
+    public void readsLocationsBetweenTwoDates() throws IOException {
+        LocationHistory history = openHistory();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            history.append(45 + i, 5, 10, now + 1000 * i, i == 3, "gps");
+        }
+        List<Long> times = new ArrayList<>();
+
+        int count = history.getLocationsBetween(now + 2000, now + 4000,
+                (latitude, longitude, accuracy, time, mock, provider) -> times.add(time));
+
+        assertEquals(3, count);
+        assertEquals(now + 2000, (long) times.get(0));
+        assertEquals(now + 4000, (long) times.get(2));
+        history.close();
+    }
+
+    @Test
+    public void appendsWhileAQueryDecodes() throws Exception {
+        LocationHistory history = openHistory();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            history.append(45, 5, 10, now + i, false, "gps");
+        }
+        boolean[] blocked = {false};
+        LocationHistory.RecordReader reader = (latitude, longitude, accuracy, time, mock, provider) -> {
+            if (time != now) {
+                return;
+            }
+            /* the query does not hold the lock, another thread can append */
+            Thread writer = new Thread(() -> {
+                try {
+                    history.append(45, 5, 10, now + 1000, false, "gps");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writer.start();
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blocked[0] = writer.isAlive();
+        };
+
+        int count = history.getLocationsBetween(now, Long.MAX_VALUE, reader);
+
+        assertFalse(blocked[0]);
+        /* the query reads the records stored when it started */
+        assertEquals(100, count);
+        assertEquals(101, history.size());
+        history.close();
+    }
+
+    @Test
+    public void clearRemovesEveryLocation() throws IOException {
+        LocationHistory history = openHistory();
+        long now = System.currentTimeMillis();
+        history.append(45, 5, 10, now, false, "gps");
+        history.append(45, 5, 10, now + 1, false, "gps");
+
+        history.clear();
+        history.append(46, 6, 10, now - 1, false, "gps");
+
+        List<Double> latitudes = new ArrayList<>();
+        history.getLocationsBetween(Long.MIN_VALUE, Long.MAX_VALUE,
+                (latitude, longitude, accuracy, time, mock, provider) -> latitudes.add(latitude));
+        assertEquals(1, latitudes.size());
+        assertEquals(46, latitudes.get(0), 1e-7);
+        history.close();
+    }
+
+    @Test
+    public void readsAppendsBeyondThePreviousQuery() throws IOException {
+        File file = newFile();
+        LocationHistory history = openHistory(file);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            history.append(45, 5, 10, now + i, false, "gps");
+        }
+        history.getLocationsBetween(Long.MIN_VALUE, Long.MAX_VALUE, IGNORE);
+
+        for (int i = 10; i < 15; i++) {
+            history.append(45, 5, 10, now + i, false, "gps");
+        }
+
+        List<Long> times = new ArrayList<>();
+        assertEquals(15, history.getLocationsBetween(Long.MIN_VALUE, Long.MAX_VALUE,
+                (latitude, longitude, accuracy, time, mock, provider) -> times.add(time)));
+        assertEquals(now + 14, (long) times.get(14));
+        /* the file is extended to the mapping, then trimmed to the records */
+        assertEquals((long) LocationHistory.MAPPING_CHUNK_RECORDS * LocationRecord.RECORD_SIZE, file.length());
+        history.close();
+        assertEquals(15L * LocationRecord.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void dropsTheUnusedMappingWhenNotClosed() throws IOException {
+        File file = newFile();
+        LocationHistory history = openHistory(file);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            history.append(45, 5, 10, now + i, false, "gps");
+        }
+        history.getLocationsBetween(Long.MIN_VALUE, Long.MAX_VALUE, IGNORE);
+
+        /* the process is killed before the history is closed */
+        LocationHistory reopened = openHistory(file);
+
+        assertEquals(10, reopened.size());
+        reopened.append(45, 5, 10, now + 10, false, "gps");
+        assertEquals(11, reopened.getLocationsBetween(now, Long.MAX_VALUE, IGNORE));
+        reopened.close();
+    }
+
+    private static LocationHistory openHistory() throws IOException {
+        return openHistory(newFile());
+    }
+
+    private static LocationHistory openHistory(File file) throws IOException {
+        LocationHistory history = new LocationHistory(file, DAY_IN_MILLISECONDS);
+        history.open();
+        return history;
+    }
+
+    private static File newFile() throws IOException {
+        File file = File.createTempFile("history", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,77 @@
+package com.mobeye.geolocation;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocationLogTest {
+    @Test
+    public void countsAppendsToANewLog() throws IOException {
+        File file = newFile();
+        LocationRingBuffer buffer = buffer(5);
+
+        LocationLog log = new LocationLog(file);
+        log.append(buffer, 3);
+
+        assertEquals(3, log.getRecordCount());
+        /* a new instance on an existing log, as created by the store and the tracking service */
+        LocationLog other = new LocationLog(file);
+        other.append(buffer, 2);
+        assertEquals(5, other.getRecordCount());
+        assertEquals(5, new LocationLog(file).getRecordCount());
+    }
+
+    @Test
+    public void readsAppendedLocations() throws IOException {
+        File file = newFile();
+        new LocationLog(file).append(buffer(4), 4);
+
+        LocationRingBuffer read = new LocationRingBuffer(10);
+        LocationLog log = new LocationLog(file);
+
+        assertEquals(4, log.readInto(read));
+        assertEquals(4, log.getRecordCount());
+        assertEquals(3000, read.getTime(0));
+        assertEquals(0, read.getTime(3));
+    }
+
+    @Test
+    public void readsWithoutRepairingTheLog() throws IOException {
+        File file = newFile();
+        new LocationLog(file).append(buffer(3), 3);
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            /* a record torn by a crash of the writer */
+            output.write(new byte[LocationRecord.RECORD_SIZE / 2]);
+        }
+        long length = file.length();
+
+        LocationRingBuffer read = new LocationRingBuffer(10);
+        int count = new LocationLog(file).readInto(read, false);
+
+        assertEquals(3, count);
+        assertEquals(3, read.size());
+        assertEquals(length, file.length());
+        assertEquals(3, new LocationLog(file).readInto(new LocationRingBuffer(10)));
+        assertEquals(3L * LocationRecord.RECORD_SIZE, file.length());
+    }
+
+    private static LocationRingBuffer buffer(int size) {
+        LocationRingBuffer buffer = new LocationRingBuffer(size);
+        for (int i = 0; i < size; i++) {
+            buffer.add(45 + i * 1e-4, 5, 10, 1000L * i, false, "gps");
+        }
+        return buffer;
+    }
+
+    private static File newFile() throws IOException {
+        File file = File.createTempFile("locations", ".bin");
+        file.deleteOnExit();
+        /* the log starts without a file */
+        file.delete();
+        return file;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) Mobeye.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * @format
+ */
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+/* Codegen spec of the android TurboModule, used on the new architecture.
+ * The ios module is still a bridge module, its ios only methods are not part of the spec. */
+export interface Spec extends TurboModule {
+    configure(configuration: Object): Promise<void>;
+    start(): void;
+    getLastLocations(number: number): Promise<Array<number>>;
+    getLastLocationsSync(number: number): Array<number>;
+    getLastUsedLocationSync(): Object | null;
+    getSimplifiedTrack(tolerance: number, since: number): Promise<Array<number>>;
+    getLocationsBetween(start: number, end: number): Promise<Array<Object>>;
+    exportLocations(start: number, end: number): Promise<Object>;
+    clearHistory(): Promise<void>;
+    getLocationsNear(latitude: number, longitude: number, radius: number, since: number): Promise<Array<number>>;
+    getVisitedCells(since: number): Promise<Array<string>>;
+    setPointsOfInterest(points: Array<Object>): Promise<void>;
+    clearPointsOfInterest(): void;
+    getNearestPointsOfInterest(number: number): Promise<Array<Object>>;
+    getDiagnostics(): Promise<Object>;
+    startBackgroundTracking(configuration: Object, options: Object): Promise<void>;
+    stopBackgroundTracking(): void;
+    setTemporaryConfiguration(configuration: Object): Promise<void>;
+    revertTemporaryConfiguration(): void;
+    checkLocationSettings(): Promise<void>;
+    getLocationProvidersStatus(): Promise<Object>;
+    addListener(eventName: string): void;
+    removeListeners(count: number): void;
+}
+
+export default TurboModuleRegistry.get<Spec>('MobeyeGeolocation');
@@ -5,4 +5,21 @@ export default {
     distanceFilter: 500,
     updateInterval: 5 * 1000,
     bufferSize: 10,
+    maxWaitTime: 0,
+    maxBatchSize: 0,
+    minEmitInterval: 0,
+    minEmitDistance: 0,
+    significantDistance: 100,
+    significantInterval: 0,
+    accuracyWeighted: false,
+    historyEnabled: false,
+    historyRetentionDays: 7,
+    smoothingEnabled: false,
+    smoothingProcessNoise: 3,
+    maxAccuracy: 0,
+    maxSpeed: 0,
+    maxLocationAge: 0,
+    rejectMockLocations: false,
+    adaptiveSamplingEnabled: false,
+    diagnosticsEnabled: false,
 };
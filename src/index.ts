@@ -10,21 +10,31 @@ import MobeyeGeolocation from './nativeModule';
 import DEFAULT_CONFIGURATION from './defaultConfiguration';
 import {
     AccuracyAuthorization,
+    BackgroundTrackingOptions,
+    Diagnostics,
     Location,
     LocationConfiguration,
     LocationEvent,
+    LocationExport,
     LocationProvidersStatus,
+    NearestPointOfInterest,
+    PointOfInterest,
 } from './types';
-import { NativeEventEmitter, PermissionsAndroid, PermissionStatus, Platform } from 'react-native';
+import { EmitterSubscription, NativeEventEmitter, PermissionsAndroid, PermissionStatus, Platform } from 'react-native';
 import { useEffect, useState } from 'react';
 
 /* init default configuration */
 const _configuration: LocationConfiguration = DEFAULT_CONFIGURATION;
+/* configuration given to configure, merged over the default one */
+let _configuredConfiguration: LocationConfiguration = DEFAULT_CONFIGURATION;
 
 export function configure(configuration?: Partial<LocationConfiguration>): Promise<void> {
-    return MobeyeGeolocation.configure({
+    const configured = {
         ..._configuration,
         ...configuration,
+    };
+    return MobeyeGeolocation.configure(configured).then(() => {
+        _configuredConfiguration = configured;
     });
 }
 
@@ -32,9 +42,15 @@ export function start(): void {
     MobeyeGeolocation.start();
 }
 
+/**
+ * Change the configuration until `revertTemporaryConfiguration` is called. The given properties are merged over the
+ * configuration given to `configure`, so the other settings (emission, smoothing, filters...) are kept: a temporary
+ * `{ distanceFilter: 20 }` only changes the distance filter.
+ * @param configuration properties to change
+ */
 export function setTemporaryConfiguration(configuration?: Partial<LocationConfiguration>): Promise<void> {
     return MobeyeGeolocation.setTemporaryConfiguration({
-        ..._configuration,
+        ..._configuredConfiguration,
         ...configuration,
     });
 }
@@ -43,24 +59,200 @@ export function revertTemporaryConfiguration(): void {
     MobeyeGeolocation.revertTemporaryConfiguration();
 }
 
+/* number of values of a location in the packed array returned by android, see LocationArrays.java */
+const PACKED_LOCATION_STRIDE = 5;
+
+/**
+ * Unpack the locations sent by android as a flat array of numbers:
+ * [latitude, longitude, accuracy, time, mock (0 or 1), latitude, ...]
+ */
+function unpackLocations(packed: number[]): Location[] {
+    const locations: Location[] = [];
+    for (let i = 0; i + PACKED_LOCATION_STRIDE <= packed.length; i += PACKED_LOCATION_STRIDE) {
+        locations.push({
+            latitude: packed[i],
+            longitude: packed[i + 1],
+            accuracy: packed[i + 2],
+            time: packed[i + 3],
+            mock: packed[i + 4] === 1,
+        });
+    }
+    return locations;
+}
+
 /**
  * Get last `n` last locations computed by the service.
  * @param n last computed locations
  */
 export function getLastLocations(n: number): Promise<[Location]> {
     return MobeyeGeolocation.getLastLocations(n).then((result) => {
-        const locations: [Location] = JSON.parse(result);
-
-        if (Platform.OS === 'ios') {
-            locations.forEach((location) => {
-                location.mock = false;
-            });
+        if (Platform.OS === 'android') {
+            return unpackLocations(result as number[]) as [Location];
         }
 
+        const locations: [Location] = JSON.parse(result as string);
+        locations.forEach((location) => {
+            location.mock = false;
+        });
+
         return locations;
     });
 }
 
+/**
+ * Throw a clear error when a synchronous method, which has no ios counterpart, is called on ios.
+ */
+function assertAndroid(method: string): void {
+    if (Platform.OS !== 'android') {
+        throw new Error(`${method} is only available on Android`);
+    }
+}
+
+/**
+ * Get last `n` last locations computed by the service synchronously, without a promise. Android only, it throws on
+ * other platforms.
+ * On the new architecture it is a direct call to the TurboModule.
+ * @param n last computed locations
+ */
+export function getLastLocationsSync(n: number): Location[] {
+    assertAndroid('getLastLocationsSync');
+    return unpackLocations(MobeyeGeolocation.getLastLocationsSync(n));
+}
+
+/**
+ * Get the last used location synchronously, the one of the last `LOCATION_UPDATED` event. Android only, it throws
+ * on other platforms.
+ * Return null if there is no used location yet.
+ */
+export function getLastUsedLocationSync(): Location | null {
+    assertAndroid('getLastUsedLocationSync');
+    return MobeyeGeolocation.getLastUsedLocationSync();
+}
+
+/**
+ * Get the buffered track simplified natively with the Douglas-Peucker algorithm, ordered from the oldest to the
+ * newest location. Android only.
+ * @param tolerance maximum distance in meters between a removed location and the simplified track
+ * @param since time in milliseconds of the oldest location of the track, inclusive
+ */
+export function getSimplifiedTrack(tolerance: number, since: number = 0): Promise<Location[]> {
+    return MobeyeGeolocation.getSimplifiedTrack(tolerance, since).then(unpackLocations);
+}
+
+/**
+ * Get the locations of the on-disk history computed between two dates, ordered from the oldest to the newest one.
+ * Android only, the history must be enabled with `historyEnabled`.
+ * @param start start time in milliseconds, inclusive
+ * @param end end time in milliseconds, inclusive
+ */
+export function getLocationsBetween(start: number, end: number): Promise<Location[]> {
+    return MobeyeGeolocation.getLocationsBetween(start, end);
+}
+
+/**
+ * Export the locations computed between two dates to a compact binary file in the cache directory, to upload them in
+ * bulk. Read from the on-disk history when it is enabled, from the buffer otherwise. Android only.
+ * @param start start time in milliseconds, inclusive
+ * @param end end time in milliseconds, inclusive
+ */
+export function exportLocations(start: number, end: number): Promise<LocationExport> {
+    return MobeyeGeolocation.exportLocations(start, end);
+}
+
+/**
+ * Remove every location of the on-disk history. Android only.
+ */
+export function clearHistory(): Promise<void> {
+    return MobeyeGeolocation.clearHistory();
+}
+
+/**
+ * Get the known locations, buffered or in the on-disk history, computed since a date within a distance of a point,
+ * ordered from the oldest to the newest one. They are looked up in a native index by geohash cell. Android only.
+ * @param latitude latitude of the point in degrees
+ * @param longitude longitude of the point in degrees
+ * @param radius distance in meters
+ * @param since time in milliseconds of the oldest location, inclusive
+ */
+export function getLocationsNear(
+    latitude: number,
+    longitude: number,
+    radius: number,
+    since: number = 0
+): Promise<Location[]> {
+    return MobeyeGeolocation.getLocationsNear(latitude, longitude, radius, since).then(unpackLocations);
+}
+
+/**
+ * Get the geohashes (7 characters, about 150 m wide) of the cells visited since a date by the known locations,
+ * buffered or in the on-disk history. Android only.
+ * @param since time in milliseconds, inclusive
+ */
+export function getVisitedCells(since: number = 0): Promise<string[]> {
+    return MobeyeGeolocation.getVisitedCells(since);
+}
+
+/**
+ * Monitor points of interest natively, a `POINT_OF_INTEREST_TRANSITION` event is sent each time the user enters or
+ * exits one of them. The points replace the previously monitored ones. Android only.
+ * @param points points of interest with their radius in meters
+ */
+export function setPointsOfInterest(points: PointOfInterest[]): Promise<void> {
+    return MobeyeGeolocation.setPointsOfInterest(points);
+}
+
+/**
+ * Stop monitoring the points of interest. Android only.
+ */
+export function clearPointsOfInterest(): void {
+    MobeyeGeolocation.clearPointsOfInterest();
+}
+
+/**
+ * Get the monitored points of interest nearest to the last location, from the nearest to the farthest one.
+ * Android only.
+ * @param n maximum number of points
+ */
+export function getNearestPointsOfInterest(n: number): Promise<NearestPointOfInterest[]> {
+    return MobeyeGeolocation.getNearestPointsOfInterest(n);
+}
+
+/**
+ * Get the counters and latency histograms of the native location pipeline. Android only.
+ * The filter and emission counters are always recorded, the other ones only while `diagnosticsEnabled` is set.
+ */
+export function getDiagnostics(): Promise<Diagnostics> {
+    return MobeyeGeolocation.getDiagnostics();
+}
+
+/**
+ * Track the locations in a foreground service which keeps running without the JS engine, for example during a full
+ * day shift. The locations it captures are sent with a `LOCATION_BACKLOG` event when the app comes back to the
+ * foreground, see `addLocationBacklogListener`. Calling it again updates the service. Android only.
+ * @param options notification shown while tracking and tolerance of the backlog simplification
+ * @param configuration configuration of the service, the one given to `configure` (or the default one if it has not
+ * been configured) is used for the missing properties
+ */
+export function startBackgroundTracking(
+    options: BackgroundTrackingOptions,
+    configuration?: Partial<LocationConfiguration>
+): Promise<void> {
+    return MobeyeGeolocation.startBackgroundTracking(
+        {
+            ..._configuredConfiguration,
+            ...configuration,
+        },
+        options
+    );
+}
+
+/**
+ * Stop the tracking service, the locations it captured are still sent to the backlog listeners. Android only.
+ */
+export function stopBackgroundTracking(): void {
+    MobeyeGeolocation.stopBackgroundTracking();
+}
+
 /**
  * Check location accuracy authorization.
  */
@@ -122,6 +314,16 @@ export function checkAndroidLocationSettings(): Promise<void> {
 /* Native event emitter to catch geolocations event */
 export const locationEmitter = new NativeEventEmitter(MobeyeGeolocation);
 
+/**
+ * Listen to the locations captured by the background tracking service while the app was in background, ordered from
+ * the oldest to the newest one. Android only.
+ */
+export function addLocationBacklogListener(listener: (locations: Location[]) => void): EmitterSubscription {
+    return locationEmitter.addListener('LOCATION_BACKLOG', (event: { locations: number[] }) => {
+        listener(unpackLocations(event.locations));
+    });
+}
+
 /**
  * A React Hook which updates when the location significantly changes.
  */
@@ -169,6 +371,21 @@ export default {
     locationEmitter,
     useLocation,
     getLastLocations,
+    getLastLocationsSync,
+    getLastUsedLocationSync,
+    getSimplifiedTrack,
+    getLocationsBetween,
+    exportLocations,
+    clearHistory,
+    getLocationsNear,
+    getVisitedCells,
+    setPointsOfInterest,
+    clearPointsOfInterest,
+    getNearestPointsOfInterest,
+    getDiagnostics,
+    startBackgroundTracking,
+    stopBackgroundTracking,
+    addLocationBacklogListener,
     checkAuthorization,
     requestAuthorization,
     checkAccuracyAuthorization,
@@ -7,9 +7,15 @@
  * @format
  */
 
-import { NativeModules } from 'react-native';
+import { NativeModules, Platform } from 'react-native';
 import { GeolocationNativeModule } from './privateTypes';
 
-const MobeyeGeolocation: GeolocationNativeModule = NativeModules.MobeyeGeolocation;
+/* the android TurboModule is used on the new architecture, the bridge module otherwise and on ios */
+// @ts-ignore: __turboModuleProxy is only defined on the new architecture
+const isTurboModuleEnabled = Platform.OS === 'android' && global.__turboModuleProxy != null;
+
+/* the bridge module is kept if the TurboModule is not registered, for example in interop mode */
+const MobeyeGeolocation: GeolocationNativeModule =
+    (isTurboModuleEnabled && require('./NativeMobeyeGeolocation').default) || NativeModules.MobeyeGeolocation;
 
 export default MobeyeGeolocation;
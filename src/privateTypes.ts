@@ -7,7 +7,17 @@
  * @format
  */
 import { NativeModule, PermissionStatus } from 'react-native';
-import { LocationConfiguration, AccuracyAuthorization, LocationProvidersStatus } from './types';
+import {
+    LocationConfiguration,
+    AccuracyAuthorization,
+    LocationProvidersStatus,
+    Location,
+    Diagnostics,
+    LocationExport,
+    BackgroundTrackingOptions,
+    NearestPointOfInterest,
+    PointOfInterest,
+} from './types';
 
 
 export interface GeolocationNativeModule extends NativeModule{
@@ -20,9 +30,51 @@ export interface GeolocationNativeModule extends NativeModule{
     start: () => void;
 
     /* Get the `n` last computed geolocation
-     * return the list of Location object as string
+     * return the list of Location object as string on ios, as a packed array of numbers on android
      */
-    getLastLocations: (number: number) => Promise<string>;
+    getLastLocations: (number: number) => Promise<string | number[]>;
+
+    /* Get the `n` last computed geolocation synchronously, as a packed array of numbers (android only) */
+    getLastLocationsSync: (number: number) => number[];
+
+    /* Get the last used location synchronously, null if there is none (android only) */
+    getLastUsedLocationSync: () => Location | null;
+
+    /* Get the buffered track simplified by Douglas-Peucker, as a packed array of numbers (android only) */
+    getSimplifiedTrack: (tolerance: number, since: number) => Promise<number[]>;
+
+    /* Get the locations of the android on-disk history computed between two dates (in milliseconds) */
+    getLocationsBetween: (start: number, end: number) => Promise<Location[]>;
+
+    /* Export the locations computed between two dates to a compact binary file (android only) */
+    exportLocations: (start: number, end: number) => Promise<LocationExport>;
+
+    /* Remove every location of the android on-disk history */
+    clearHistory: () => Promise<void>;
+
+    /* Get the buffered and history locations near a point since a date, as a packed array of numbers (android only) */
+    getLocationsNear: (latitude: number, longitude: number, radius: number, since: number) => Promise<number[]>;
+
+    /* Get the geohashes of the cells visited since a date (android only) */
+    getVisitedCells: (since: number) => Promise<string[]>;
+
+    /* Monitor points of interest, transitions are sent with POINT_OF_INTEREST_TRANSITION (android only) */
+    setPointsOfInterest: (points: PointOfInterest[]) => Promise<void>;
+
+    /* Stop monitoring the points of interest (android only) */
+    clearPointsOfInterest: () => void;
+
+    /* Get the points of interest nearest to the last location (android only) */
+    getNearestPointsOfInterest: (number: number) => Promise<NearestPointOfInterest[]>;
+
+    /* Get the counters and latency histograms of the location pipeline (android only) */
+    getDiagnostics: () => Promise<Diagnostics>;
+
+    /* Track the locations in an android foreground service, independent of the React instance */
+    startBackgroundTracking: (configuration: LocationConfiguration, options: BackgroundTrackingOptions) => Promise<void>;
+
+    /* Stop the android tracking service */
+    stopBackgroundTracking: () => void;
 
     /* Set the provider to get the best location */
     setTemporaryConfiguration: (configuration: LocationConfiguration) => Promise<void>;
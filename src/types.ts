@@ -22,6 +22,23 @@ export type LocationConfiguration = {
     distanceFilter: number,
     updateInterval: number,
     bufferSize: number,
+    maxWaitTime: number,
+    maxBatchSize: number,
+    minEmitInterval: number,
+    minEmitDistance: number,
+    significantDistance: number,
+    significantInterval: number,
+    accuracyWeighted: boolean,
+    historyEnabled: boolean,
+    historyRetentionDays: number,
+    smoothingEnabled: boolean,
+    smoothingProcessNoise: number,
+    maxAccuracy: number,
+    maxSpeed: number,
+    maxLocationAge: number,
+    rejectMockLocations: boolean,
+    adaptiveSamplingEnabled: boolean,
+    diagnosticsEnabled: boolean,
 }
 
 export type Location = {
@@ -30,11 +47,16 @@ export type Location = {
     accuracy: number;
     time: number;
     mock: boolean;
+    /* coordinates measured by the provider, only on android when smoothingEnabled is set */
+    rawLatitude?: number;
+    rawLongitude?: number;
 }
 
 export type LocationEventSuccess = {
     success: true;
     payload: Location;
+    /* batch of locations, ordered from the oldest to the newest one, sent only if `maxWaitTime` is set */
+    locations?: Location[];
 }
 
 export type LocationEventError = {
@@ -44,6 +66,91 @@ export type LocationEventError = {
 
 export type LocationEvent = LocationEventSuccess | LocationEventError;
 
+/* point of interest monitored on android, its circle is centered on the coordinates */
+export type PointOfInterest = {
+    id: string;
+    latitude: number;
+    longitude: number;
+    /* radius in meters */
+    radius: number;
+}
+
+export type PointOfInterestTransition = {
+    id: string;
+    transition: 'enter' | 'exit';
+    /* distance in meters between the location and the point */
+    distance: number;
+}
+
+export type PointOfInterestEvent = {
+    transitions: PointOfInterestTransition[];
+    /* location which triggered the transitions */
+    location: Location;
+}
+
+/* file written by exportLocations on android */
+export type LocationExport = {
+    /* absolute path of the file, in the cache directory */
+    path: string;
+    /* number of exported locations */
+    count: number;
+    /* size of the file in bytes */
+    size: number;
+}
+
+/* options of the android background tracking service */
+export type BackgroundTrackingOptions = {
+    /* title and text of the notification shown while tracking */
+    notificationTitle: string;
+    notificationText: string;
+    /* name of a drawable resource of the app used as the small icon of the notification, a location pin by default */
+    notificationIcon?: string;
+    /* tolerance in meters of the simplification of the backlog sent to JS, 0 keeps every location */
+    backlogTolerance?: number;
+}
+
+export type NearestPointOfInterest = {
+    id: string;
+    distance: number;
+}
+
+/* summary of a histogram, percentiles are rounded up to the next power of two */
+export type HistogramSummary = {
+    count: number;
+    mean: number;
+    p50: number;
+    p95: number;
+    p99: number;
+    max: number;
+}
+
+export type Diagnostics = {
+    enabled: boolean;
+    callbacks: number;
+    fixes: number;
+    acceptedFixes: number;
+    fixesPerMinute: number;
+    /* number of rejected locations by filter: stale, mock, accuracy, speed */
+    rejectedFixes: { [filter: string]: number };
+    emittedEvents: number;
+    droppedEvents: number;
+    coalescedEvents: number;
+    providerRegistrations: number;
+    skippedRegistrations: number;
+    /* time in milliseconds spent with each provider priority */
+    priorityTimes: { [priority: string]: number };
+    motion: 'STATIONARY' | 'MOVING' | 'FAST';
+    serializedBytes: number;
+    storeWrittenBytes: number;
+    /* in milliseconds */
+    fixAge: HistogramSummary;
+    arrivalInterval: HistogramSummary;
+    /* in microseconds */
+    emitLatency: HistogramSummary;
+    serializationTime: HistogramSummary;
+    storeWriteTime: HistogramSummary;
+}
+
 export type LocationProvidersStatus ={
     isGPSLocationEnabled: boolean;
     isNetworkLocationEnabled: boolean